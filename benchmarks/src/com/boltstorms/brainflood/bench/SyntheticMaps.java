@@ -0,0 +1,127 @@
+package com.boltstorms.brainflood.bench;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.tiles.StaticTiledMapTile;
+import com.boltstorms.brainflood.level.BitGrid;
+import com.boltstorms.brainflood.level.Level;
+import com.boltstorms.brainflood.level.VocabBlockSystem;
+
+import java.util.Random;
+
+/** Generated test maps for the benchmarks, so they don't depend on the hand-made stages. */
+public final class SyntheticMaps {
+
+    public static final int TILE = 32;
+
+    public enum Shape {
+        /** Solid border around one big open room. */
+        CAVERN,
+        /** Corridors one tile wide, walls on every other row/column with random gaps. */
+        MAZE,
+        /** Rows of small U-shaped cups that fill and spill into each other. */
+        BASINS
+    }
+
+    private SyntheticMaps() {}
+
+    /** The level code logs through Gdx.app, so give it a headless backend once. */
+    public static void ensureHeadless() {
+        if (Gdx.app != null) return;
+        new HeadlessApplication(new ApplicationAdapter() {});
+    }
+
+    public static BitGrid walls(Shape shape, int w, int h, long seed) {
+        BitGrid walls = new BitGrid(w, h);
+        Random rnd = new Random(seed);
+
+        for (int x = 0; x < w; x++) {
+            walls.set(x, 0);
+            walls.set(x, h - 1);
+        }
+        for (int y = 0; y < h; y++) {
+            walls.set(0, y);
+            walls.set(w - 1, y);
+        }
+
+        switch (shape) {
+            case CAVERN:
+                break;
+
+            case MAZE:
+                for (int y = 2; y < h - 1; y += 2) {
+                    for (int x = 1; x < w - 1; x++) {
+                        if (rnd.nextInt(8) != 0) walls.set(x, y);
+                    }
+                }
+                for (int x = 2; x < w - 1; x += 2) {
+                    for (int y = 1; y < h - 1; y++) {
+                        if (rnd.nextInt(8) == 0) walls.set(x, y);
+                    }
+                }
+                break;
+
+            case BASINS:
+                // 6 wide x 4 tall cups every 8 columns / 6 rows, staggered per row
+                for (int by = 2; by + 4 < h - 1; by += 6) {
+                    int offset = ((by / 6) & 1) * 4;
+                    for (int bx = 1 + offset; bx + 6 < w - 1; bx += 8) {
+                        for (int x = bx; x < bx + 6; x++) walls.set(x, by);
+                        for (int y = by; y < by + 4; y++) {
+                            walls.set(bx, y);
+                            walls.set(bx + 5, y);
+                        }
+                    }
+                }
+                break;
+        }
+
+        // keep the inlet spot open
+        walls.clear(w / 2, h - 2);
+        return walls;
+    }
+
+    /** Wraps a wall grid into an in-memory TiledMap with the layers Level expects. */
+    public static TiledMap toTiledMap(BitGrid walls) {
+        TiledMap map = new TiledMap();
+
+        TiledMapTileLayer wallLayer = new TiledMapTileLayer(walls.width, walls.height, TILE, TILE);
+        wallLayer.setName(Level.LAYER_WALL);
+
+        // one shared cell is enough, the game only checks for presence
+        TiledMapTileLayer.Cell cell = new TiledMapTileLayer.Cell();
+        cell.setTile(new StaticTiledMapTile(new TextureRegion()));
+        for (int y = 0; y < walls.height; y++) {
+            for (int x = 0; x < walls.width; x++) {
+                if (walls.get(x, y)) wallLayer.setCell(x, y, cell);
+            }
+        }
+        map.getLayers().add(wallLayer);
+
+        MapLayer vocab = new MapLayer();
+        vocab.setName(VocabBlockSystem.OBJ_LAYER);
+        map.getLayers().add(vocab);
+
+        return map;
+    }
+
+    /** Adds count 2x2-tile vocab rects (count is rounded down to even) spread over the map. */
+    public static void addVocabRects(TiledMap map, int count, long seed) {
+        TiledMapTileLayer wall = (TiledMapTileLayer) map.getLayers().get(Level.LAYER_WALL);
+        MapLayer vocab = map.getLayers().get(VocabBlockSystem.OBJ_LAYER);
+        Random rnd = new Random(seed);
+
+        count &= ~1;
+        for (int i = 0; i < count; i++) {
+            int tx = 1 + rnd.nextInt(Math.max(1, wall.getWidth() - 3));
+            int ty = 1 + rnd.nextInt(Math.max(1, wall.getHeight() - 3));
+            vocab.getObjects().add(new RectangleMapObject(tx * TILE, ty * TILE, 2 * TILE, 2 * TILE));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.boltstorms.brainflood.bench;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+import com.boltstorms.brainflood.level.Level;
+import com.boltstorms.brainflood.level.VocabBlockSystem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** VocabBlockSystem.loadAndRandomize: pool sampling, collider creation, tile occupancy and the hit-test index. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VocabBlockBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    @Param({"16", "1024"})
+    public int blocks;
+
+    private Level level;
+    private List<VocabBlockSystem.VocabPair> pool;
+    private World world;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setup() {
+        SyntheticMaps.ensureHeadless();
+        level = new Level(SyntheticMaps.toTiledMap(SyntheticMaps.walls(SyntheticMaps.Shape.CAVERN, size, size, 42L)));
+        SyntheticMaps.addVocabRects(level.getMap(), blocks, 7L);
+
+        pool = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            pool.add(new VocabBlockSystem.VocabPair("字" + i, "word" + i));
+        }
+    }
+
+    @Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void newWorld() {
+        world = new World(new Vector2(0, -18f), true);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Invocation)
+    public void disposeWorld() {
+        world.dispose();
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() {
+        level.getMap().dispose();
+    }
+
+    @Benchmark
+    public VocabBlockSystem loadAndRandomize() {
+        VocabBlockSystem system = new VocabBlockSystem(level, world, 32f);
+        system.loadAndRandomize(pool, blocks / 2);
+        return system;
+    }
+}
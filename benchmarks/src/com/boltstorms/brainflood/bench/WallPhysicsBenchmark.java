@@ -0,0 +1,53 @@
+package com.boltstorms.brainflood.bench;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+import com.boltstorms.brainflood.level.Level;
+import com.boltstorms.brainflood.level.WallPhysics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** WallPhysics.buildAll: creating the static wall colliders for a level. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WallPhysicsBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    @Param({"CAVERN", "MAZE", "BASINS"})
+    public SyntheticMaps.Shape shape;
+
+    private Level level;
+    private World world;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setup() {
+        SyntheticMaps.ensureHeadless();
+        level = new Level(SyntheticMaps.toTiledMap(SyntheticMaps.walls(shape, size, size, 42L)));
+    }
+
+    @Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void newWorld() {
+        world = new World(new Vector2(0, -18f), true);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Invocation)
+    public void disposeWorld() {
+        world.dispose();
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() {
+        level.getMap().dispose();
+    }
+
+    @Benchmark
+    public WallPhysics buildAll() {
+        WallPhysics walls = new WallPhysics(world, 32f);
+        walls.buildAll(level);
+        return walls;
+    }
+}
@@ -0,0 +1,72 @@
+package com.boltstorms.brainflood.bench;
+
+import com.boltstorms.brainflood.level.ArrayTileGrid;
+import com.boltstorms.brainflood.water.WaterSystem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WaterSystem.update: the stepWater sub-iterations, flux reset and drain.
+ *
+ * Every shot starts from the same state: a fresh system primed with primeSteps updates (the sim is
+ * deterministic, also with the band solver), then batchSteps updates are timed. Flooding one system
+ * across iterations would fill and put small maps to sleep and move the front on big ones, so the
+ * score would depend on how many iterations ran.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WaterBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    @Param({"CAVERN", "MAZE", "BASINS"})
+    public SyntheticMaps.Shape shape;
+
+    @Param({"FLOAT", "FIXED16"})
+    public WaterSystem.Storage storage;
+
+    /** 1 = sequential sweep, more = the parallel band solver. */
+    @Param({"1", "4"})
+    public int solverThreads;
+
+    /** Updates run before measuring, so there is a moving water front to step. */
+    @Param({"600"})
+    public int primeSteps;
+
+    /** Updates timed per shot. */
+    @Param({"120"})
+    public int batchSteps;
+
+    private ArrayTileGrid grid;
+    private WaterSystem water;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setup() {
+        // water runs on a plain grid: no TiledMap, no backend
+        grid = new ArrayTileGrid(SyntheticMaps.walls(shape, size, size, 42L), SyntheticMaps.TILE, SyntheticMaps.TILE);
+    }
+
+    @Setup(org.openjdk.jmh.annotations.Level.Iteration)
+    public void prime() {
+        int inletTx = size / 2, inletTy = size - 2;
+        water = new WaterSystem(grid, inletTx, inletTy, inletTx, inletTy, grid::isWall, storage);
+        water.sourceTilesPerSec = 40f;
+        water.setSolverThreads(solverThreads);
+
+        for (int i = 0; i < primeSteps; i++) water.update(1f / 60f);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Iteration)
+    public void disposeWater() {
+        water.dispose();
+    }
+
+    @Benchmark
+    public double update() {
+        for (int i = 0; i < batchSteps; i++) water.update(1f / 60f);
+        return water.getTotalWater();
+    }
+}
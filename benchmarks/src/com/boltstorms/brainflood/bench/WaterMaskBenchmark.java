@@ -0,0 +1,56 @@
+package com.boltstorms.brainflood.bench;
+
+import com.boltstorms.brainflood.level.ArrayTileGrid;
+import com.boltstorms.brainflood.water.WaterSystem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The water masks: masks() is WaterSystem's mask pass on its own (open mask from the level, then the
+ * word-parallel floods from the border and from the inlet), levelChanged() is all of onLevelChanged
+ * (the masks plus flag chunks, purge, surfaces and waking every wet cell).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WaterMaskBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    @Param({"CAVERN", "MAZE", "BASINS"})
+    public SyntheticMaps.Shape shape;
+
+    /** Updates run before levelChanged() is measured, so there is water to purge and wake. */
+    @Param({"600"})
+    public int primeSteps;
+
+    private ArrayTileGrid grid;
+    private WaterSystem water;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setup() {
+        grid = new ArrayTileGrid(SyntheticMaps.walls(shape, size, size, 42L), SyntheticMaps.TILE, SyntheticMaps.TILE);
+
+        int inletTx = size / 2, inletTy = size - 2;
+        water = new WaterSystem(grid, inletTx, inletTy, inletTx, inletTy, grid::isWall, WaterSystem.Storage.FLOAT);
+        water.sourceTilesPerSec = 40f;
+        for (int i = 0; i < primeSteps; i++) water.update(1f / 60f);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() {
+        water.dispose();
+    }
+
+    @Benchmark
+    public void masks() {
+        water.recomputeMasks();
+    }
+
+    @Benchmark
+    public void levelChanged() {
+        water.onLevelChanged();
+    }
+}
@@ -1,11 +1,80 @@
 package com.boltstorms.brainflood;
 
 import com.badlogic.gdx.Game;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Screen;
+import com.boltstorms.brainflood.profile.FrameProfiler;
 import com.boltstorms.brainflood.screens.GameScreen;
+import com.boltstorms.brainflood.session.LevelPreloader;
+import com.boltstorms.brainflood.session.LevelSession;
+import com.boltstorms.brainflood.text.GlyphCache;
 
 public class BrainFloodGame extends Game {
+	private static final String[] LEVELS = {"Stages/level_01.tmx"};
+	// render-thread time per frame spent finishing the preloaded level's textures and glyphs
+	private static final float PRELOAD_BUDGET_MS = 2f;
+
+	private final boolean recordInput; // every level's inputs are saved for :tools SessionReplayer
+	private final FrameProfiler profiler = new FrameProfiler(FrameProfiler.DEFAULT_WINDOW); // shared by every level
+
+	private GlyphCache glyphs;      // shared by every level so glyphs baked once stay baked
+	private LevelPreloader preloader;
+	private int levelIndex;
+
+	public BrainFloodGame() {
+		this(false);
+	}
+
+	public BrainFloodGame(boolean recordInput) {
+		this.recordInput = recordInput;
+	}
+
 	@Override
 	public void create() {
-		setScreen(new GameScreen());
+		glyphs = new GlyphCache(Gdx.files.internal("NotoSansSC-VariableFont_wght.ttf"), 18);
+		preloader = new LevelPreloader(glyphs);
+		setScreen(new GameScreen(this, LevelSession.load(LEVELS[levelIndex], glyphs)));
+		glyphs.save(); // no-op on a warm start; Android may never reach dispose
+		preloader.start(LEVELS[(levelIndex + 1) % LEVELS.length]);
+	}
+
+	@Override
+	public void render() {
+		super.render();
+		preloader.update(PRELOAD_BUDGET_MS);
+	}
+
+	public GlyphCache getGlyphs() {
+		return glyphs;
+	}
+
+	public FrameProfiler getProfiler() {
+		return profiler;
+	}
+
+	public boolean isRecordingInput() {
+		return recordInput;
+	}
+
+	/** Switches to the next level; only waits if its preload has not finished yet. */
+	public void advance() {
+		levelIndex = (levelIndex + 1) % LEVELS.length;
+		LevelSession next = preloader.take();
+		if (next == null) next = LevelSession.load(LEVELS[levelIndex], glyphs);
+
+		Screen old = getScreen();
+		setScreen(new GameScreen(this, next));
+		old.dispose();
+		// glyphs the preload added; the pages are copied here and written on the preloader's thread
+		glyphs.save();
+		preloader.start(LEVELS[(levelIndex + 1) % LEVELS.length]);
+	}
+
+	@Override
+	public void dispose() {
+		super.dispose();
+		if (getScreen() != null) getScreen().dispose();
+		preloader.dispose();
+		glyphs.dispose(); // saves new glyphs, disposes font
 	}
 }
@@ -0,0 +1,58 @@
+package com.boltstorms.brainflood.level;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+
+/** TileGrid backed by a BitGrid of walls. Needs no TiledMap, files or libGDX backend. */
+public class ArrayTileGrid implements TileGrid {
+
+    private final BitGrid walls;
+    private final int tileW, tileH;
+
+    public ArrayTileGrid(int mapW, int mapH, int tileW, int tileH) {
+        this(new BitGrid(mapW, mapH), tileW, tileH);
+    }
+
+    /** Wraps (does not copy) an existing wall grid. */
+    public ArrayTileGrid(BitGrid walls, int tileW, int tileH) {
+        this.walls = walls;
+        this.tileW = tileW;
+        this.tileH = tileH;
+    }
+
+    @Override
+    public BitGrid getWalls() { return walls; }
+
+    @Override public int mapW() { return walls.width; }
+    @Override public int mapH() { return walls.height; }
+    @Override public int tileW() { return tileW; }
+    @Override public int tileH() { return tileH; }
+
+    @Override
+    public boolean isWall(int tx, int ty) {
+        return walls.get(tx, ty);
+    }
+
+    public void setWall(int tx, int ty) {
+        walls.set(tx, ty);
+    }
+
+    public void removeWall(int tx, int ty) {
+        walls.clear(tx, ty);
+    }
+
+    @Override
+    public int pxToTileX(float px) {
+        return MathUtils.clamp((int)(px / tileW), 0, walls.width - 1);
+    }
+
+    @Override
+    public int pxToTileY(float py) {
+        return MathUtils.clamp((int)(py / tileH), 0, walls.height - 1);
+    }
+
+    @Override
+    public Vector2 tileCenterPx(int tx, int ty) {
+        return new Vector2((tx + 0.5f) * tileW, (ty + 0.5f) * tileH);
+    }
+}
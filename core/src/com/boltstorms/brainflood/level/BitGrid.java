@@ -0,0 +1,209 @@
+package com.boltstorms.brainflood.level;
+
+import java.util.Arrays;
+
+/**
+ * One bit per tile, stored row by row. Every row starts on a fresh long,
+ * so two rows never share a word and whole rows can be scanned 64 tiles at a time.
+ */
+public class BitGrid {
+
+    public final int width, height;
+    public final int wordsPerRow;
+    public final long[] words;
+
+    public BitGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+    }
+
+    public boolean get(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) return false;
+        return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /** First set bit at or after x in row y, or -1. */
+    public int nextSetBit(int x, int y) {
+        if (x < 0) x = 0;
+        if (x >= width || y < 0 || y >= height) return -1;
+
+        int row = y * wordsPerRow;
+        int wi = x >>> 6;
+        long bits = words[row + wi] & (-1L << x);
+        while (true) {
+            if (bits != 0) return (wi << 6) + Long.numberOfTrailingZeros(bits);
+            if (++wi == wordsPerRow) return -1;
+            bits = words[row + wi];
+        }
+    }
+
+    /**
+     * The 64 bits of row y starting at x (bit 0 = tile x). Tiles past the end of the row
+     * read as 0; x must be inside the row.
+     */
+    public long bits(int x, int y) {
+        int k = y * wordsPerRow + (x >>> 6);
+        int shift = x & 63;
+        long lo = words[k] >>> shift;
+        if (shift == 0 || (x >>> 6) + 1 == wordsPerRow) return lo;
+        return lo | (words[k + 1] << (64 - shift));
+    }
+
+    /** True if any bit in the inclusive rectangle [x0..x1] x [y0..y1] is set (clipped to the grid). */
+    public boolean anyInRect(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(width - 1, x1);
+        y1 = Math.min(height - 1, y1);
+        if (x0 > x1 || y0 > y1) return false;
+
+        int w0 = x0 >>> 6, w1 = x1 >>> 6;
+        long firstMask = -1L << x0;
+        long lastMask = -1L >>> (63 - (x1 & 63));
+        for (int y = y0; y <= y1; y++) {
+            int row = y * wordsPerRow;
+            for (int wi = w0; wi <= w1; wi++) {
+                long m = -1L;
+                if (wi == w0) m &= firstMask;
+                if (wi == w1) m &= lastMask;
+                if ((words[row + wi] & m) != 0) return true;
+            }
+        }
+        return false;
+    }
+
+    public void set(int x, int y) {
+        words[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+    }
+
+    public void clear(int x, int y) {
+        words[y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+    }
+
+    /** Sets the tile and its 4 neighbours (clipped to the grid). */
+    public void setWithNeighbours(int x, int y) {
+        int row = y * wordsPerRow;
+        words[row + (x >>> 6)] |= 1L << x;
+        if (x > 0) words[row + ((x - 1) >>> 6)] |= 1L << (x - 1);
+        if (x < width - 1) words[row + ((x + 1) >>> 6)] |= 1L << (x + 1);
+        if (y > 0) words[row - wordsPerRow + (x >>> 6)] |= 1L << x;
+        if (y < height - 1) words[row + wordsPerRow + (x >>> 6)] |= 1L << x;
+    }
+
+    public void clearAll() {
+        Arrays.fill(words, 0L);
+    }
+
+    /** Copies row srcY of src into row y of this grid (same width). */
+    public void copyRow(BitGrid src, int srcY, int y) {
+        System.arraycopy(src.words, srcY * wordsPerRow, words, y * wordsPerRow, wordsPerRow);
+    }
+
+    // -------------------------
+    // Flood fill
+    // -------------------------
+
+    /**
+     * Grows the set bits of this grid through the set bits of open (4-neighbour fill)
+     * until nothing changes. Rows are filled 64 tiles per step with shift/and
+     * propagation, and a row is only revisited when a neighbouring row changed.
+     */
+    public void floodFill(BitGrid open) {
+        int[] stack = new int[height];
+        boolean[] queued = new boolean[height];
+        int sp = 0;
+
+        // start with every seeded row and its neighbours (they pull the seeds in)
+        for (int y = 0; y < height; y++) {
+            if (!rowHasBits(y)) continue;
+            for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                if (queued[ny]) continue;
+                stack[sp++] = ny;
+                queued[ny] = true;
+            }
+        }
+
+        while (sp > 0) {
+            int y = stack[--sp];
+            queued[y] = false;
+            if (!fillRow(y, open)) continue;
+
+            if (y > 0 && !queued[y - 1]) { stack[sp++] = y - 1; queued[y - 1] = true; }
+            if (y < height - 1 && !queued[y + 1]) { stack[sp++] = y + 1; queued[y + 1] = true; }
+        }
+    }
+
+    public boolean rowHasBits(int y) {
+        for (int wi = y * wordsPerRow, end = wi + wordsPerRow; wi < end; wi++) {
+            if (words[wi] != 0) return true;
+        }
+        return false;
+    }
+
+    /** Pulls bits in from the rows above/below, then spreads them along the row. Returns true if the row changed. */
+    private boolean fillRow(int y, BitGrid open) {
+        int row = y * wordsPerRow;
+        long[] o = open.words;
+        boolean changed = false;
+
+        // up pass: vertical pull + spread towards higher x, carrying into the next word
+        long carry = 0;
+        for (int wi = 0; wi < wordsPerRow; wi++) {
+            int k = row + wi;
+            long pro = o[k];
+            long gen = words[k] | (carry & pro);
+            if (y > 0) gen |= words[k - wordsPerRow] & pro;
+            if (y < height - 1) gen |= words[k + wordsPerRow] & pro;
+
+            gen = fillUp(gen, pro);
+            if (gen != words[k]) { words[k] = gen; changed = true; }
+            carry = gen >>> 63;
+        }
+
+        // down pass: spread towards lower x, carrying into the previous word
+        carry = 0;
+        for (int wi = wordsPerRow - 1; wi >= 0; wi--) {
+            int k = row + wi;
+            long pro = o[k];
+            long gen = fillDown(words[k] | (carry & pro), pro);
+            if (gen != words[k]) { words[k] = gen; changed = true; }
+            carry = gen << 63;
+        }
+
+        return changed;
+    }
+
+    /** Kogge-Stone occluded fill of gen through pro towards the high bits. */
+    private static long fillUp(long gen, long pro) {
+        gen |= pro & (gen << 1);
+        pro &= pro << 1;
+        gen |= pro & (gen << 2);
+        pro &= pro << 2;
+        gen |= pro & (gen << 4);
+        pro &= pro << 4;
+        gen |= pro & (gen << 8);
+        pro &= pro << 8;
+        gen |= pro & (gen << 16);
+        pro &= pro << 16;
+        gen |= pro & (gen << 32);
+        return gen;
+    }
+
+    /** Kogge-Stone occluded fill of gen through pro towards the low bits. */
+    private static long fillDown(long gen, long pro) {
+        gen |= pro & (gen >>> 1);
+        pro &= pro >>> 1;
+        gen |= pro & (gen >>> 2);
+        pro &= pro >>> 2;
+        gen |= pro & (gen >>> 4);
+        pro &= pro >>> 4;
+        gen |= pro & (gen >>> 8);
+        pro &= pro >>> 8;
+        gen |= pro & (gen >>> 16);
+        pro &= pro >>> 16;
+        gen |= pro & (gen >>> 32);
+        return gen;
+    }
+}
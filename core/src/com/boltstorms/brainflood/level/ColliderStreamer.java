@@ -0,0 +1,165 @@
+package com.boltstorms.brainflood.level;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.List;
+
+/**
+ * Creates wall and vocab colliders only near dynamic bodies. The map is cut into
+ * CHUNK x CHUNK tile chunks; a chunk is activated when a dynamic body comes within
+ * marginTiles of it and deactivated again once every body is a full chunk further away.
+ * Walls are merged per chunk, vocab blocks are reference-counted by the active chunks
+ * they overlap, so a block spanning a chunk seam gets exactly one body.
+ */
+public class ColliderStreamer {
+
+    public static final int CHUNK = 16;
+
+    private final World world;
+    private final float ppm;
+    private final WallPhysics walls;
+    private final int mapW, mapH, tileW, tileH;
+    private final int chunksX, chunksY;
+
+    private final boolean[] active;
+    private final IntArray activeChunks = new IntArray();
+    private VocabBlockSystem vocab;
+    private int[][] chunkBlocks; // indices into vocab.getBlocks(), per chunk
+
+    private final Array<Body> bodies = new Array<>();
+
+    /** Tiles of slack between a dynamic body and the nearest chunk that must have colliders. */
+    public int marginTiles = 8;
+
+    /** The walls must not have been built yet; this calls WallPhysics.prepare. */
+    public ColliderStreamer(World world, float ppm, Level level, WallPhysics walls) {
+        this.world = world;
+        this.ppm = ppm;
+        this.walls = walls;
+        this.mapW = level.mapW();
+        this.mapH = level.mapH();
+        this.tileW = level.tileW();
+        this.tileH = level.tileH();
+        this.chunksX = (mapW + CHUNK - 1) / CHUNK;
+        this.chunksY = (mapH + CHUNK - 1) / CHUNK;
+        this.active = new boolean[chunksX * chunksY];
+
+        walls.prepare(level);
+    }
+
+    /** Indexes the loaded blocks by chunk. Call after loadAndRandomize on a system with lazy bodies. */
+    public void attachVocab(VocabBlockSystem vocab) {
+        this.vocab = vocab;
+        List<VocabBlockSystem.VocabBlock> blocks = vocab.getBlocks();
+
+        int[] counts = new int[chunksX * chunksY];
+        int[][] bounds = new int[blocks.size()][];
+        for (int i = 0; i < blocks.size(); i++) {
+            int[] t = vocab.tileBoundsOf(blocks.get(i));
+            bounds[i] = t;
+            for (int cy = t[1] / CHUNK; cy <= t[3] / CHUNK; cy++) {
+                for (int cx = t[0] / CHUNK; cx <= t[2] / CHUNK; cx++) counts[cy * chunksX + cx]++;
+            }
+        }
+
+        chunkBlocks = new int[chunksX * chunksY][];
+        for (int c = 0; c < counts.length; c++) {
+            if (counts[c] > 0) chunkBlocks[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            int[] t = bounds[i];
+            for (int cy = t[1] / CHUNK; cy <= t[3] / CHUNK; cy++) {
+                for (int cx = t[0] / CHUNK; cx <= t[2] / CHUNK; cx++) {
+                    int c = cy * chunksX + cx;
+                    chunkBlocks[c][counts[c]++] = i;
+                }
+            }
+        }
+
+        // blocks in chunks that are already live
+        for (int k = 0; k < activeChunks.size; k++) acquireBlocks(activeChunks.get(k));
+    }
+
+    /** Call before every world.step (and once after spawning the player). */
+    public void update() {
+        world.getBodies(bodies);
+
+        // activate everything within the margin of a dynamic body
+        for (int b = 0; b < bodies.size; b++) {
+            Body body = bodies.get(b);
+            if (body.getType() != BodyDef.BodyType.DynamicBody) continue;
+
+            Vector2 p = body.getPosition();
+            int tx = (int) (p.x * ppm / tileW), ty = (int) (p.y * ppm / tileH);
+            int cx0 = clampX((tx - marginTiles) / CHUNK), cx1 = clampX((tx + marginTiles) / CHUNK);
+            int cy0 = clampY((ty - marginTiles) / CHUNK), cy1 = clampY((ty + marginTiles) / CHUNK);
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    int c = cy * chunksX + cx;
+                    if (!active[c]) activate(c);
+                }
+            }
+        }
+
+        // drop chunks that every body has left by more than one extra chunk (hysteresis)
+        int keep = marginTiles + CHUNK;
+        for (int k = activeChunks.size - 1; k >= 0; k--) {
+            int c = activeChunks.get(k);
+            if (!nearAnyBody(c, keep)) {
+                activeChunks.removeIndex(k);
+                deactivate(c);
+            }
+        }
+    }
+
+    public int getActiveChunkCount() { return activeChunks.size; }
+
+    // ----------------- internals -----------------
+
+    private boolean nearAnyBody(int c, int keepTiles) {
+        int x0 = (c % chunksX) * CHUNK, y0 = (c / chunksX) * CHUNK;
+        for (int b = 0; b < bodies.size; b++) {
+            Body body = bodies.get(b);
+            if (body.getType() != BodyDef.BodyType.DynamicBody) continue;
+
+            Vector2 p = body.getPosition();
+            int tx = (int) (p.x * ppm / tileW), ty = (int) (p.y * ppm / tileH);
+            if (tx >= x0 - keepTiles && tx < x0 + CHUNK + keepTiles
+                    && ty >= y0 - keepTiles && ty < y0 + CHUNK + keepTiles) return true;
+        }
+        return false;
+    }
+
+    private void activate(int c) {
+        active[c] = true;
+        activeChunks.add(c);
+        int x0 = (c % chunksX) * CHUNK, y0 = (c / chunksX) * CHUNK;
+        walls.buildRegion(x0, y0, x0 + CHUNK - 1, y0 + CHUNK - 1);
+        acquireBlocks(c);
+    }
+
+    private void deactivate(int c) {
+        active[c] = false;
+        int x0 = (c % chunksX) * CHUNK, y0 = (c / chunksX) * CHUNK;
+        walls.clearRegion(x0, y0, x0 + CHUNK - 1, y0 + CHUNK - 1);
+
+        if (chunkBlocks == null || chunkBlocks[c] == null) return;
+        List<VocabBlockSystem.VocabBlock> blocks = vocab.getBlocks();
+        for (int i : chunkBlocks[c]) vocab.releaseBody(blocks.get(i));
+    }
+
+    private void acquireBlocks(int c) {
+        if (chunkBlocks == null || chunkBlocks[c] == null) return;
+        List<VocabBlockSystem.VocabBlock> blocks = vocab.getBlocks();
+        for (int i : chunkBlocks[c]) vocab.acquireBody(blocks.get(i));
+    }
+
+    private int clampX(int cx) { return Math.max(0, Math.min(chunksX - 1, cx)); }
+    private int clampY(int cy) { return Math.max(0, Math.min(chunksY - 1, cy)); }
+}
@@ -0,0 +1,263 @@
+package com.boltstorms.brainflood.level;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTile;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
+import com.badlogic.gdx.maps.tiled.tiles.StaticTiledMapTile;
+import com.badlogic.gdx.utils.Array;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Loads a level compiled offline from TMX (./gradlew :tools:compileLevels) instead of parsing XML.
+ * Produces the same TiledMap the TmxMapLoader would (tile layers, rectangle objects, layer order),
+ * plus the wall bitset, so Level does not have to derive it again.
+ *
+ * Layout (big-endian):
+ *   int magic, int version, int mapW, mapH, tileW, tileH
+ *   int tilesetCount, per tileset: int firstGid, tileW, tileH, columns, tileCount, spacing, margin, str image
+ *   int layerCount, per layer: byte kind, str name, byte visible, float opacity, then
+ *     tiles:   int[mapW * mapH] raw gids (with Tiled flip bits), row 0 = bottom
+ *     objects: int count, per object: str name, float x, y, width, height (y up)
+ *   int wordsPerRow, long[wordsPerRow * mapH] wall bits (BitGrid layout)
+ * str = u16 length + UTF-8 bytes. Image paths are relative to the level file.
+ *
+ * read() does everything but GL work and is safe on a worker thread: tileset images are decoded
+ * to Pixmaps and the map's tiles get empty regions. uploadNextTexture() then turns one Pixmap at a
+ * time into a Texture on the render thread and points the tiles at it. Without graphics (headless
+ * runs, where there is no GL) the images are not even decoded and the tiles keep their empty regions.
+ *
+ * readTmx() does the same for a level that was never compiled, converting it in memory with TmxCompiler.
+ */
+public class CompiledLevel {
+
+    public static final int MAGIC = 0x42464C56; // "BFLV"
+    public static final int VERSION = 1;
+    public static final byte LAYER_TILES = 0;
+    public static final byte LAYER_OBJECTS = 1;
+
+    public static final int FLIP_H = 0x80000000;
+    public static final int FLIP_V = 0x40000000;
+    public static final int FLIP_D = 0x20000000;
+    public static final int GID_MASK = ~(FLIP_H | FLIP_V | FLIP_D);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public final TiledMap map;
+    public final BitGrid walls;
+
+    // tileset images waiting for upload, with the tile regions that sample them
+    private final Array<Pixmap> pendingImages = new Array<>();
+    private final Array<TextureRegion[]> pendingRegions = new Array<>();
+    private final Array<int[]> pendingRects = new Array<>(); // x, y, w, h per region
+    private final Array<Texture> textures = new Array<>();
+
+    private CompiledLevel(TiledMap map, BitGrid walls) {
+        this.map = map;
+        this.walls = walls;
+        map.setOwnedResources(textures);
+    }
+
+    /** read() followed by every upload; render thread only. */
+    public static CompiledLevel load(FileHandle file) {
+        CompiledLevel level = read(file);
+        while (!level.uploadNextTexture()) { }
+        return level;
+    }
+
+    /**
+     * Uploads one pending tileset image. Render thread only. Returns true once every tileset
+     * has its texture (and the map is ready to draw).
+     */
+    public boolean uploadNextTexture() {
+        if (pendingImages.size == 0) return true;
+
+        Pixmap pixmap = pendingImages.removeIndex(0);
+        TextureRegion[] regions = pendingRegions.removeIndex(0);
+        int[] rects = pendingRects.removeIndex(0);
+
+        Texture texture = new Texture(pixmap);
+        pixmap.dispose();
+        textures.add(texture);
+        for (int i = 0; i < regions.length; i++) {
+            regions[i].setRegion(texture, rects[i * 4], rects[i * 4 + 1], rects[i * 4 + 2], rects[i * 4 + 3]);
+        }
+        return pendingImages.size == 0;
+    }
+
+    /** Drops images that were never uploaded (the level was abandoned before it finished loading). */
+    public void disposePending() {
+        for (Pixmap p : pendingImages) p.dispose();
+        pendingImages.clear();
+        pendingRegions.clear();
+        pendingRects.clear();
+    }
+
+    /** The compiled sibling of a .tmx path ("Stages/level_01.tmx" -> "Stages/level_01.bflevel"). */
+    public static String compiledPath(String tmxPath) {
+        int dot = tmxPath.lastIndexOf('.');
+        return (dot < 0 ? tmxPath : tmxPath.substring(0, dot)) + ".bflevel";
+    }
+
+    /** Parses the file and decodes the tileset images; no GL calls, so it may run on any thread. */
+    public static CompiledLevel read(FileHandle file) {
+        return read(file, true);
+    }
+
+    /** read(), skipping the tileset images if graphics is false; the map must then never be drawn. */
+    public static CompiledLevel read(FileHandle file, boolean graphics) {
+        ByteBuffer buf;
+        try {
+            buf = file.map();
+        } catch (RuntimeException e) {
+            Gdx.app.log("LEVEL", "Cannot map " + file.path() + ", reading it instead");
+            buf = ByteBuffer.wrap(file.readBytes());
+        }
+        return read(buf, file, graphics);
+    }
+
+    /** Converts a .tmx level with TmxCompiler and reads the result; same threading as read(). */
+    public static CompiledLevel readTmx(FileHandle tmx, boolean graphics) {
+        return read(ByteBuffer.wrap(TmxCompiler.compile(tmx)), tmx, graphics);
+    }
+
+    /** file names the level in errors; tileset image paths are relative to its directory. */
+    private static CompiledLevel read(ByteBuffer buf, FileHandle file, boolean graphics) {
+        if (buf.getInt() != MAGIC) throw new RuntimeException("Not a compiled level: " + file.path());
+        int version = buf.getInt();
+        if (version != VERSION) throw new RuntimeException("Compiled level " + file.path() + " has version " + version + ", recompile it");
+
+        int mapW = buf.getInt(), mapH = buf.getInt();
+        int tileW = buf.getInt(), tileH = buf.getInt();
+
+        TiledMap map = new TiledMap();
+        CompiledLevel level = new CompiledLevel(map, new BitGrid(mapW, mapH));
+
+        int tilesetCount = buf.getInt();
+        for (int t = 0; t < tilesetCount; t++) {
+            int firstGid = buf.getInt();
+            int tw = buf.getInt(), th = buf.getInt();
+            int columns = buf.getInt(), tileCount = buf.getInt();
+            int spacing = buf.getInt(), margin = buf.getInt();
+            String image = readString(buf);
+
+            TextureRegion[] regions = new TextureRegion[tileCount];
+            int[] rects = new int[tileCount * 4];
+
+            TiledMapTileSet set = new TiledMapTileSet();
+            set.setName(image);
+            for (int i = 0; i < tileCount; i++) {
+                rects[i * 4] = margin + (i % columns) * (tw + spacing);
+                rects[i * 4 + 1] = margin + (i / columns) * (th + spacing);
+                rects[i * 4 + 2] = tw;
+                rects[i * 4 + 3] = th;
+                regions[i] = new TextureRegion();
+                StaticTiledMapTile tile = new StaticTiledMapTile(regions[i]);
+                tile.setId(firstGid + i);
+                set.putTile(firstGid + i, tile);
+            }
+            map.getTileSets().addTileSet(set);
+
+            if (!graphics) continue;
+            level.pendingImages.add(new Pixmap(relative(file.parent(), image)));
+            level.pendingRegions.add(regions);
+            level.pendingRects.add(rects);
+        }
+
+        int[] gids = new int[mapW * mapH];
+        int layerCount = buf.getInt();
+        for (int l = 0; l < layerCount; l++) {
+            byte kind = buf.get();
+            String name = readString(buf);
+            boolean visible = buf.get() != 0;
+            float opacity = buf.getFloat();
+
+            MapLayer layer;
+            if (kind == LAYER_TILES) {
+                buf.asIntBuffer().get(gids);
+                buf.position(buf.position() + gids.length * 4);
+                layer = tileLayer(map, gids, mapW, mapH, tileW, tileH);
+            } else {
+                layer = new MapLayer();
+                for (int n = buf.getInt(); n > 0; n--) {
+                    String objName = readString(buf);
+                    RectangleMapObject obj = new RectangleMapObject(buf.getFloat(), buf.getFloat(), buf.getFloat(), buf.getFloat());
+                    if (!objName.isEmpty()) obj.setName(objName);
+                    layer.getObjects().add(obj);
+                }
+            }
+            layer.setName(name);
+            layer.setVisible(visible);
+            layer.setOpacity(opacity);
+            map.getLayers().add(layer);
+        }
+
+        if (buf.getInt() != level.walls.wordsPerRow) {
+            level.disposePending();
+            throw new RuntimeException("Corrupt wall bitset in " + file.path());
+        }
+        buf.asLongBuffer().get(level.walls.words);
+        return level;
+    }
+
+    private static TiledMapTileLayer tileLayer(TiledMap map, int[] gids, int mapW, int mapH, int tileW, int tileH) {
+        TiledMapTileLayer layer = new TiledMapTileLayer(mapW, mapH, tileW, tileH);
+        for (int y = 0, i = 0; y < mapH; y++) {
+            for (int x = 0; x < mapW; x++, i++) {
+                int raw = gids[i];
+                if (raw == 0) continue;
+                TiledMapTile tile = map.getTileSets().getTile(raw & GID_MASK);
+                if (tile == null) continue;
+
+                TiledMapTileLayer.Cell cell = new TiledMapTileLayer.Cell();
+                cell.setTile(tile);
+                boolean h = (raw & FLIP_H) != 0, v = (raw & FLIP_V) != 0;
+                // same mapping as TmxMapLoader
+                if ((raw & FLIP_D) != 0) {
+                    if (h && v) {
+                        cell.setFlipHorizontally(true);
+                        cell.setRotation(TiledMapTileLayer.Cell.ROTATE_270);
+                    } else if (h) {
+                        cell.setRotation(TiledMapTileLayer.Cell.ROTATE_270);
+                    } else if (v) {
+                        cell.setRotation(TiledMapTileLayer.Cell.ROTATE_90);
+                    } else {
+                        cell.setFlipVertically(true);
+                        cell.setRotation(TiledMapTileLayer.Cell.ROTATE_270);
+                    }
+                } else {
+                    cell.setFlipHorizontally(h);
+                    cell.setFlipVertically(v);
+                }
+                layer.setCell(x, y, cell);
+            }
+        }
+        return layer;
+    }
+
+    /** Resolves "../x/y.png" against dir without relying on the backend normalising "..". */
+    static FileHandle relative(FileHandle dir, String path) {
+        FileHandle f = dir;
+        for (String part : path.split("/")) {
+            if (part.isEmpty() || part.equals(".")) continue;
+            f = part.equals("..") ? f.parent() : f.child(part);
+        }
+        return f;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getShort() & 0xFFFF;
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -11,7 +11,7 @@ import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 
-public class Level {
+public class Level implements TileGrid {
 
     // Layer names (match Tiled)
     public static final String LAYER_BG = "background_layer";
@@ -26,11 +26,17 @@ public class Level {
 
     private final TiledMap map;
     private final TiledMapTileLayer wallLayer;
+    private final BitGrid walls; // baked from wallLayer, kept in sync by removeWall
 
     private final int mapW, mapH;
     private final int tileW, tileH;
 
     public Level(TiledMap map) {
+        this(map, null);
+    }
+
+    /** walls: the wall layer already baked (e.g. by CompiledLevel), or null to derive it from the layer. */
+    public Level(TiledMap map, BitGrid walls) {
         this.map = map;
 
         this.wallLayer = (TiledMapTileLayer) map.getLayers().get(LAYER_WALL);
@@ -40,22 +46,44 @@ public class Level {
         this.mapH = wallLayer.getHeight();
         this.tileW = (int) wallLayer.getTileWidth();
         this.tileH = (int) wallLayer.getTileHeight();
+
+        if (walls != null) {
+            if (walls.width != mapW || walls.height != mapH) throw new RuntimeException("Wall bitset does not match the wall layer size");
+            this.walls = walls;
+            return;
+        }
+
+        this.walls = new BitGrid(mapW, mapH);
+        for (int y = 0; y < mapH; y++) {
+            for (int x = 0; x < mapW; x++) {
+                TiledMapTileLayer.Cell cell = wallLayer.getCell(x, y);
+                if (cell != null && cell.getTile() != null) walls.set(x, y);
+            }
+        }
     }
 
     public TiledMap getMap() { return map; }
     public TiledMapTileLayer getWallLayer() { return wallLayer; }
 
-    public int mapW() { return mapW; }
-    public int mapH() { return mapH; }
-    public int tileW() { return tileW; }
-    public int tileH() { return tileH; }
+    @Override public int mapW() { return mapW; }
+    @Override public int mapH() { return mapH; }
+    @Override public int tileW() { return tileW; }
+    @Override public int tileH() { return tileH; }
 
     public int mapWidthPx() { return mapW * tileW; }
     public int mapHeightPx() { return mapH * tileH; }
 
+    @Override
     public boolean isWall(int tx, int ty) {
-        TiledMapTileLayer.Cell cell = wallLayer.getCell(tx, ty);
-        return cell != null && cell.getTile() != null;
+        return walls.get(tx, ty);
+    }
+
+    @Override
+    public BitGrid getWalls() { return walls; }
+
+    /** True if any tile in the inclusive tile rectangle is a wall. */
+    public boolean anyWallIn(int tx0, int ty0, int tx1, int ty1) {
+        return walls.anyInRect(tx0, ty0, tx1, ty1);
     }
 
     public boolean isOpen(int tx, int ty) {
@@ -63,17 +91,22 @@ public class Level {
     }
 
     public void removeWall(int tx, int ty) {
+        if (tx < 0 || tx >= mapW || ty < 0 || ty >= mapH) return;
         wallLayer.setCell(tx, ty, null);
+        walls.clear(tx, ty);
     }
 
+    @Override
     public int pxToTileX(float px) {
         return MathUtils.clamp((int)(px / tileW), 0, mapW - 1);
     }
 
+    @Override
     public int pxToTileY(float py) {
         return MathUtils.clamp((int)(py / tileH), 0, mapH - 1);
     }
 
+    @Override
     public Vector2 tileCenterPx(int tx, int ty) {
         return new Vector2((tx + 0.5f) * tileW, (ty + 0.5f) * tileH);
     }
@@ -0,0 +1,29 @@
+package com.boltstorms.brainflood.level;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * The tile geometry the simulation needs, without any map loading or rendering.
+ * Level implements it on top of a TiledMap; ArrayTileGrid is a plain in-memory version
+ * for running the water, masks and buoyancy in a bare JVM (tests, benchmarks, servers).
+ */
+public interface TileGrid {
+
+    int mapW();
+    int mapH();
+    int tileW();
+    int tileH();
+
+    boolean isWall(int tx, int ty);
+
+    /**
+     * All walls as a bitset, for loops that want to test 64 tiles per word
+     * (BitGrid.bits / anyInRect / nextSetBit). Live view: do not modify it.
+     */
+    BitGrid getWalls();
+
+    int pxToTileX(float px);
+    int pxToTileY(float py);
+
+    Vector2 tileCenterPx(int tx, int ty);
+}
@@ -0,0 +1,240 @@
+package com.boltstorms.brainflood.level;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Base64Coder;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Converts a Tiled .tmx level into the binary format read by CompiledLevel. Offline, :tools
+ * LevelCompiler writes the result next to the .tmx; at runtime CompiledLevel.readTmx() reads it
+ * straight from memory for levels that were not compiled, so a TMX level loads on a worker thread
+ * like a compiled one.
+ *
+ * Supports orthogonal, non-infinite maps with csv or base64 (plain, zlib, gzip) layer data and
+ * internal or external (.tsx) single-image tilesets. Image and group layers are skipped.
+ */
+public final class TmxCompiler {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private TmxCompiler() {}
+
+    /** The compiled bytes of tmx; no GL calls, so it may run on any thread. */
+    public static byte[] compile(FileHandle tmx) {
+        try {
+            return compileOrThrow(tmx);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot compile " + tmx.path() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] compileOrThrow(FileHandle tmx) throws IOException {
+        Element map = parse(tmx);
+        if (!"orthogonal".equals(map.getAttribute("orientation"))) throw new IOException("only orthogonal maps are supported");
+        if ("1".equals(map.getAttribute("infinite"))) throw new IOException("infinite maps are not supported");
+
+        int mapW = intAttr(map, "width", 0), mapH = intAttr(map, "height", 0);
+        int tileW = intAttr(map, "tilewidth", 0), tileH = intAttr(map, "tileheight", 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + mapW * mapH * 4);
+        DataOutputStream o = new DataOutputStream(bytes);
+        o.writeInt(CompiledLevel.MAGIC);
+        o.writeInt(CompiledLevel.VERSION);
+        o.writeInt(mapW);
+        o.writeInt(mapH);
+        o.writeInt(tileW);
+        o.writeInt(tileH);
+
+        NodeList tilesets = map.getElementsByTagName("tileset");
+        o.writeInt(tilesets.getLength());
+        for (int i = 0; i < tilesets.getLength(); i++) {
+            Element ref = (Element) tilesets.item(i);
+            Element ts = ref;
+            String tsDir = ""; // relative to the tmx, ends with '/' unless empty
+            if (ref.hasAttribute("source")) {
+                String source = ref.getAttribute("source");
+                ts = parse(CompiledLevel.relative(tmx.parent(), source));
+                tsDir = source.substring(0, source.lastIndexOf('/') + 1);
+            }
+            Element image = firstChild(ts, "image");
+            if (image == null) throw new IOException("image collection tilesets are not supported");
+
+            int tw = intAttr(ts, "tilewidth", tileW), th = intAttr(ts, "tileheight", tileH);
+            int spacing = intAttr(ts, "spacing", 0), margin = intAttr(ts, "margin", 0);
+            int columns = intAttr(ts, "columns", 0);
+            if (columns == 0) columns = (intAttr(image, "width", 0) - 2 * margin + spacing) / (tw + spacing);
+            int tileCount = intAttr(ts, "tilecount", 0);
+            if (tileCount == 0) tileCount = columns * ((intAttr(image, "height", 0) - 2 * margin + spacing) / (th + spacing));
+
+            o.writeInt(intAttr(ref, "firstgid", 1));
+            o.writeInt(tw);
+            o.writeInt(th);
+            o.writeInt(columns);
+            o.writeInt(tileCount);
+            o.writeInt(spacing);
+            o.writeInt(margin);
+            writeString(o, normalize(tsDir + image.getAttribute("source")));
+        }
+
+        // layers in document order, so getIndex() matches what TmxMapLoader produces
+        BitGrid walls = new BitGrid(mapW, mapH);
+        int layerCount = 0;
+        ByteArrayOutputStream layerBytes = new ByteArrayOutputStream(mapW * mapH * 4);
+        DataOutputStream lo = new DataOutputStream(layerBytes);
+        for (Node n = map.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (!(n instanceof Element)) continue;
+            Element layer = (Element) n;
+            String tag = layer.getTagName();
+            if (!tag.equals("layer") && !tag.equals("objectgroup")) continue; // image and group layers
+
+            layerCount++;
+            String name = layer.getAttribute("name");
+            lo.writeByte(tag.equals("layer") ? CompiledLevel.LAYER_TILES : CompiledLevel.LAYER_OBJECTS);
+            writeString(lo, name);
+            lo.writeByte(intAttr(layer, "visible", 1) != 0 ? 1 : 0);
+            lo.writeFloat(layer.hasAttribute("opacity") ? Float.parseFloat(layer.getAttribute("opacity")) : 1f);
+
+            if (tag.equals("layer")) {
+                int[] gids = readTiles(layer, mapW, mapH);
+                for (int gid : gids) lo.writeInt(gid);
+                if (name.equals(Level.LAYER_WALL)) {
+                    for (int y = 0, i = 0; y < mapH; y++) {
+                        for (int x = 0; x < mapW; x++, i++) {
+                            if ((gids[i] & CompiledLevel.GID_MASK) != 0) walls.set(x, y);
+                        }
+                    }
+                }
+            } else {
+                NodeList objects = layer.getElementsByTagName("object");
+                lo.writeInt(objects.getLength());
+                float mapHeightPx = mapH * tileH;
+                for (int i = 0; i < objects.getLength(); i++) {
+                    Element obj = (Element) objects.item(i);
+                    float x = floatAttr(obj, "x"), y = floatAttr(obj, "y");
+                    float w = floatAttr(obj, "width"), h = floatAttr(obj, "height");
+                    writeString(lo, obj.getAttribute("name"));
+                    lo.writeFloat(x);
+                    lo.writeFloat(mapHeightPx - y - h); // Tiled is y-down, libGDX y-up
+                    lo.writeFloat(w);
+                    lo.writeFloat(h);
+                }
+            }
+        }
+        o.writeInt(layerCount);
+        layerBytes.writeTo(o);
+
+        o.writeInt(walls.wordsPerRow);
+        for (long word : walls.words) o.writeLong(word);
+        o.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Raw gids, bottom row first. */
+    private static int[] readTiles(Element layer, int mapW, int mapH) throws IOException {
+        Element data = firstChild(layer, "data");
+        if (data == null || firstChild(data, "chunk") != null) throw new IOException("layer without plain data");
+
+        int[] topDown = new int[mapW * mapH];
+        String encoding = data.getAttribute("encoding");
+        if (encoding.equals("csv")) {
+            String[] values = data.getTextContent().trim().split("\\s*,\\s*");
+            for (int i = 0; i < topDown.length; i++) topDown[i] = (int) Long.parseLong(values[i].trim());
+        } else if (encoding.equals("base64")) {
+            byte[] raw = Base64Coder.decodeLines(data.getTextContent().trim());
+            String compression = data.getAttribute("compression");
+            InputStream in = new ByteArrayInputStream(raw);
+            if (compression.equals("zlib")) in = new InflaterInputStream(in);
+            else if (compression.equals("gzip")) in = new GZIPInputStream(in);
+            else if (!compression.isEmpty()) throw new IOException("unsupported compression " + compression);
+
+            byte[] decoded = readAll(in, topDown.length * 4);
+            ByteBuffer.wrap(decoded).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(topDown);
+        } else {
+            throw new IOException("unsupported layer encoding '" + encoding + "'");
+        }
+
+        int[] gids = new int[topDown.length];
+        for (int row = 0; row < mapH; row++) {
+            System.arraycopy(topDown, row * mapW, gids, (mapH - 1 - row) * mapW, mapW);
+        }
+        return gids;
+    }
+
+    private static byte[] readAll(InputStream in, int length) throws IOException {
+        byte[] out = new byte[length];
+        int off = 0;
+        while (off < length) {
+            int r = in.read(out, off, length - off);
+            if (r < 0) throw new IOException("layer data too short");
+            off += r;
+        }
+        return out;
+    }
+
+    /** Drops "dir/.." pairs, so "ts/../img.png" is stored as "img.png". */
+    private static String normalize(String path) {
+        List<String> parts = new ArrayList<>();
+        for (String part : path.split("/")) {
+            if (part.isEmpty() || part.equals(".")) continue;
+            if (part.equals("..") && !parts.isEmpty() && !parts.get(parts.size() - 1).equals("..")) {
+                parts.remove(parts.size() - 1);
+            } else {
+                parts.add(part);
+            }
+        }
+        StringBuilder sb = new StringBuilder(path.length());
+        for (String part : parts) {
+            if (sb.length() > 0) sb.append('/');
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    private static Element parse(FileHandle file) throws IOException {
+        InputStream in = file.read();
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in).getDocumentElement();
+        } catch (Exception e) {
+            throw new IOException(file.path() + ": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Element firstChild(Element parent, String tag) {
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element && ((Element) n).getTagName().equals(tag)) return (Element) n;
+        }
+        return null;
+    }
+
+    private static int intAttr(Element e, String name, int def) {
+        return e.hasAttribute(name) ? Integer.parseInt(e.getAttribute(name)) : def;
+    }
+
+    private static float floatAttr(Element e, String name) {
+        return e.hasAttribute(name) ? Float.parseFloat(e.getAttribute(name)) : 0f;
+    }
+
+    private static void writeString(DataOutputStream o, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        o.writeShort(bytes.length);
+        o.write(bytes);
+    }
+}
@@ -7,10 +7,15 @@ import com.badlogic.gdx.maps.objects.RectangleMapObject;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.physics.box2d.*;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.boltstorms.brainflood.vocab.Sampling;
+import com.boltstorms.brainflood.vocab.VocabDictionary;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 public class VocabBlockSystem {
 
@@ -18,6 +23,11 @@ public class VocabBlockSystem {
 
     public enum Side { HANZI, ENGLISH }
 
+    public interface BreakListener {
+        /** Called after a block broke; [tx0..tx1] x [ty0..ty1] are the tiles it covered. */
+        void onBlockBroken(VocabBlock block, int tx0, int ty0, int tx1, int ty1);
+    }
+
     public static class VocabPair {
         public final String hanzi;
         public final String english;
@@ -37,6 +47,7 @@ public class VocabBlockSystem {
         public boolean selected = false;
 
         public Body body; // collider while active
+        int colliderRefs;  // active streaming chunks overlapping this block
 
         public VocabBlock(Rectangle boundsPx, int pairId, Side side, String text) {
             this.boundsPx = boundsPx;
@@ -54,38 +65,77 @@ public class VocabBlockSystem {
     private final World world;
     private final float ppm;
 
-    private final boolean[][] solid; // [ty][tx]
+    // number of unbroken blocks covering each tile, index = ty * mapW + tx
+    private final short[] occupancy;
     private final List<VocabBlock> blocks = new ArrayList<>();
 
+    // hit-test index: blocks bucketed by BUCKET x BUCKET tile cells, stored flat
+    // (bucket b owns bucketItems[bucketStart[b] .. bucketStart[b + 1]), in block order)
+    private static final int BUCKET = 8;
+    private final int bucketsX, bucketsY;
+    private final int[] bucketStart;
+    private int[] bucketItems = new int[0];
+    private int[] viewSeen = new int[0]; // per block: last blocksInView pass that listed it
+    private int viewPass = 0;
+
     private VocabBlock selectedA = null;
+    private BreakListener breakListener;
+    private boolean lazyBodies = false; // bodies created by a ColliderStreamer instead of on load
+    private final Random rng = new Random(); // every random choice of a load, so a seed reproduces it
+    private int labelVersion = 0; // bumped whenever the set of visible labels changes
 
     public VocabBlockSystem(Level level, World world, float ppm) {
         this.level = level;
         this.world = world;
         this.ppm = ppm;
-        this.solid = new boolean[level.mapH()][level.mapW()];
+        this.occupancy = new short[level.mapW() * level.mapH()];
+        this.bucketsX = (level.mapW() + BUCKET - 1) / BUCKET;
+        this.bucketsY = (level.mapH() + BUCKET - 1) / BUCKET;
+        this.bucketStart = new int[bucketsX * bucketsY + 1];
+    }
+
+    /** Makes the next loadAndRandomize pick and place the same vocab as any other run with this seed. */
+    public void setSeed(long seed) {
+        rng.setSeed(seed);
     }
 
-    /** Call once after loading the map. */
+    /** Call once after loading the map. Picks one pair per two blocks from the pool. */
     public void loadAndRandomize(List<VocabPair> vocabPool, int pairsNeeded) {
-        blocks.clear();
-        clearSolid();
+        Array<Rectangle> rects = readBlockRects();
+        pairsNeeded = rects.size / 2;
+
+        if (vocabPool.size() < pairsNeeded) {
+            throw new RuntimeException("Not enough vocab pairs. Need " + pairsNeeded + ", have " + vocabPool.size());
+        }
+
+        List<VocabPair> chosen = new ArrayList<>(pairsNeeded);
+        for (int i : Sampling.sample(vocabPool.size(), pairsNeeded, rng)) chosen.add(vocabPool.get(i));
+        placeBlocks(rects, chosen);
+    }
+
+    /** Same, sampling from a compiled dictionary (tag null = any entry); only the chosen entries are decoded. */
+    public void loadAndRandomize(VocabDictionary dictionary, String tag) {
+        Array<Rectangle> rects = readBlockRects();
+        int pairsNeeded = rects.size / 2;
+
+        int available = dictionary.tagSize(tag);
+        if (available < pairsNeeded) {
+            throw new RuntimeException("Not enough vocab pairs tagged " + tag + ". Need " + pairsNeeded + ", have " + available);
+        }
+        placeBlocks(rects, dictionary.sample(tag, pairsNeeded, rng));
+    }
 
+    private Array<Rectangle> readBlockRects() {
         Array<Rectangle> rects = readRectsFromLayer();
         if (rects.size == 0) throw new RuntimeException("No objects in layer: " + OBJ_LAYER);
         if (rects.size % 2 != 0) throw new RuntimeException("vocab_blocks must be even (you have " + rects.size + ")");
+        return rects;
+    }
 
+    private void placeBlocks(Array<Rectangle> rects, List<VocabPair> chosen) {
+        blocks.clear();
+        Arrays.fill(occupancy, (short) 0);
         int totalBlocks = rects.size;
-        int neededPairs = totalBlocks / 2;
-        pairsNeeded = neededPairs;
-
-        if (vocabPool.size() < pairsNeeded) {
-            throw new RuntimeException("Not enough vocab pairs. Need " + pairsNeeded + ", have " + vocabPool.size());
-        }
-
-        List<VocabPair> poolCopy = new ArrayList<>(vocabPool);
-        Collections.shuffle(poolCopy);
-        List<VocabPair> chosen = poolCopy.subList(0, pairsNeeded);
 
         class Assignment {
             int pairId; Side side; String text;
@@ -98,28 +148,36 @@ public class VocabBlockSystem {
             assignments.add(new Assignment(i, Side.ENGLISH, chosen.get(i).english));
         }
 
-        Collections.shuffle(assignments);
-        rects.shuffle();
+        Collections.shuffle(assignments, rng);
+        for (int i = rects.size - 1; i > 0; i--) rects.swap(i, rng.nextInt(i + 1)); // not Array.shuffle: that uses MathUtils.random
 
         for (int i = 0; i < totalBlocks; i++) {
             Rectangle r = rects.get(i);
             Assignment a = assignments.get(i);
 
             VocabBlock vb = new VocabBlock(new Rectangle(r), a.pairId, a.side, a.text);
-            vb.body = createStaticBoxBody(r);
+            if (!lazyBodies) vb.body = createStaticBoxBody(r);
             blocks.add(vb);
 
             // ✅ MARK ALL TILES COVERED BY THIS RECTANGLE AS SOLID
-            markSolidRect(r, true);
+            addOccupancy(r, 1);
         }
+        buildHitIndex();
+        labelVersion++;
 
-        Gdx.app.log("VOCAB", "Loaded " + blocks.size() + " vocab blocks (" + pairsNeeded + " pairs).");
+        Gdx.app.log("VOCAB", "Loaded " + blocks.size() + " vocab blocks (" + chosen.size() + " pairs).");
     }
 
     /** Click handling. */
     public boolean handleClick(float worldPxX, float worldPxY) {
-        VocabBlock clicked = findTopmostBlock(worldPxX, worldPxY);
-        if (clicked == null || clicked.broken) return false;
+        int index = blockIndexAt(worldPxX, worldPxY);
+        return index >= 0 && handleClick(index);
+    }
+
+    /** A click on block index (into getBlocks()), already resolved from the pointer. False if it is broken. */
+    public boolean handleClick(int index) {
+        VocabBlock clicked = blocks.get(index);
+        if (clicked.broken) return false;
 
         if (selectedA == null) {
             select(clicked);
@@ -152,24 +210,50 @@ public class VocabBlockSystem {
 
     public boolean isSolidTile(int tx, int ty) {
         if (tx < 0 || tx >= level.mapW() || ty < 0 || ty >= level.mapH()) return false;
-        return solid[ty][tx];
+        return occupancy[ty * level.mapW() + tx] > 0;
     }
 
     public List<VocabBlock> getBlocks() {
         return blocks;
     }
 
-    // ----------------- internals -----------------
+    /** Changes whenever blocks are loaded or broken; label caches compare it to know when to rebuild. */
+    public int getLabelVersion() {
+        return labelVersion;
+    }
 
-    private void clearSolid() {
-        for (int y = 0; y < level.mapH(); y++) {
-            for (int x = 0; x < level.mapW(); x++) {
-                solid[y][x] = false;
-            }
+    public void setBreakListener(BreakListener listener) {
+        this.breakListener = listener;
+    }
+
+    /** When set before loadAndRandomize, block bodies are only created while a streaming chunk needs them. */
+    public void setLazyBodies(boolean lazy) {
+        this.lazyBodies = lazy;
+    }
+
+    /** Tile range covered by a block, as {x0, y0, x1, y1} (inclusive). */
+    int[] tileBoundsOf(VocabBlock b) {
+        return tileBounds(b.boundsPx);
+    }
+
+    /** One more active chunk overlaps b; creates its body on the first reference. */
+    void acquireBody(VocabBlock b) {
+        if (b.colliderRefs++ == 0 && !b.broken && b.body == null) b.body = createStaticBoxBody(b.boundsPx);
+    }
+
+    /** One less active chunk overlaps b; destroys its body when none are left. */
+    void releaseBody(VocabBlock b) {
+        if (b.colliderRefs == 0) return;
+        if (--b.colliderRefs == 0 && b.body != null) {
+            world.destroyBody(b.body);
+            b.body = null;
         }
     }
 
-    private void markSolidRect(Rectangle rPx, boolean value) {
+    // ----------------- internals -----------------
+
+    /** Tile range covered by a pixel rect, as {x0, y0, x1, y1} (inclusive). */
+    private int[] tileBounds(Rectangle rPx) {
         // Use small insets so borders don’t accidentally spill into neighbor tiles
         float inset = 0.01f;
 
@@ -186,10 +270,54 @@ public class VocabBlockSystem {
         if (x0 > x1) { int t = x0; x0 = x1; x1 = t; }
         if (y0 > y1) { int t = y0; y0 = y1; y1 = t; }
 
+        return new int[]{x0, y0, x1, y1};
+    }
+
+    /** Adds delta to the occupancy of every tile the rect covers; a tile is solid while any block covers it. */
+    private void addOccupancy(Rectangle rPx, int delta) {
+        int[] t = tileBounds(rPx);
+        int x0 = t[0], y0 = t[1], x1 = t[2], y1 = t[3];
+        int mapW = level.mapW();
+
         for (int ty = y0; ty <= y1; ty++) {
             for (int tx = x0; tx <= x1; tx++) {
-                if (tx < 0 || tx >= level.mapW() || ty < 0 || ty >= level.mapH()) continue;
-                solid[ty][tx] = value;
+                occupancy[ty * mapW + tx] += delta;
+            }
+        }
+    }
+
+    /** Bucket range touched by a block's full pixel rect (edges included), as {bx0, by0, bx1, by1}. */
+    private int[] bucketBounds(Rectangle rPx) {
+        return new int[]{
+                level.pxToTileX(rPx.x) / BUCKET,
+                level.pxToTileY(rPx.y) / BUCKET,
+                level.pxToTileX(rPx.x + rPx.width) / BUCKET,
+                level.pxToTileY(rPx.y + rPx.height) / BUCKET
+        };
+    }
+
+    /** Counting sort of block indices into buckets; blocks never move, so this runs once per load. */
+    private void buildHitIndex() {
+        Arrays.fill(bucketStart, 0);
+        int total = 0;
+        for (VocabBlock b : blocks) {
+            int[] k = bucketBounds(b.boundsPx);
+            for (int by = k[1]; by <= k[3]; by++) {
+                for (int bx = k[0]; bx <= k[2]; bx++) bucketStart[by * bucketsX + bx + 1]++;
+            }
+        }
+        for (int i = 1; i < bucketStart.length; i++) {
+            total += bucketStart[i];
+            bucketStart[i] = total;
+        }
+
+        bucketItems = new int[total];
+        viewSeen = new int[blocks.size()];
+        int[] fill = Arrays.copyOf(bucketStart, bucketStart.length - 1);
+        for (int i = 0; i < blocks.size(); i++) {
+            int[] k = bucketBounds(blocks.get(i).boundsPx);
+            for (int by = k[1]; by <= k[3]; by++) {
+                for (int bx = k[0]; bx <= k[2]; bx++) bucketItems[fill[by * bucketsX + bx]++] = i;
             }
         }
     }
@@ -207,11 +335,40 @@ public class VocabBlockSystem {
         return rects;
     }
 
-    private VocabBlock findTopmostBlock(float px, float py) {
-        for (VocabBlock b : blocks) {
-            if (!b.broken && b.contains(px, py)) return b;
+    /**
+     * Fills out with the indices (into getBlocks()) of the blocks in the buckets overlapping the
+     * pixel rectangle [x0, x1] x [y0, y1], each once. Broken blocks are included. Costs the buckets
+     * and blocks in the area, not the level; the order only depends on the area.
+     */
+    public void blocksInView(float x0, float y0, float x1, float y1, IntArray out) {
+        out.clear();
+        if (++viewPass == 0) {
+            Arrays.fill(viewSeen, 0);
+            viewPass = 1;
+        }
+        int bx0 = level.pxToTileX(x0) / BUCKET, bx1 = level.pxToTileX(x1) / BUCKET;
+        int by0 = level.pxToTileY(y0) / BUCKET, by1 = level.pxToTileY(y1) / BUCKET;
+        for (int by = by0; by <= by1; by++) {
+            for (int bx = bx0; bx <= bx1; bx++) {
+                int bucket = by * bucketsX + bx;
+                for (int k = bucketStart[bucket], end = bucketStart[bucket + 1]; k < end; k++) {
+                    int i = bucketItems[k];
+                    if (viewSeen[i] == viewPass) continue;
+                    viewSeen[i] = viewPass;
+                    out.add(i);
+                }
+            }
         }
-        return null;
+    }
+
+    /** Index (into getBlocks()) of the first unbroken block containing the pixel, or -1. */
+    public int blockIndexAt(float px, float py) {
+        int bucket = (level.pxToTileY(py) / BUCKET) * bucketsX + level.pxToTileX(px) / BUCKET;
+        for (int k = bucketStart[bucket], end = bucketStart[bucket + 1]; k < end; k++) {
+            VocabBlock b = blocks.get(bucketItems[k]);
+            if (!b.broken && b.contains(px, py)) return bucketItems[k];
+        }
+        return -1;
     }
 
     private void select(VocabBlock b) { b.selected = true; }
@@ -221,13 +378,19 @@ public class VocabBlockSystem {
         b.broken = true;
         b.selected = false;
 
-        // ✅ clear ALL covered tiles, not just one
-        markSolidRect(b.boundsPx, false);
+        // ✅ release ALL covered tiles; ones another block still covers stay solid
+        addOccupancy(b.boundsPx, -1);
+        labelVersion++;
 
         if (b.body != null) {
             world.destroyBody(b.body);
             b.body = null;
         }
+
+        if (breakListener != null) {
+            int[] t = tileBounds(b.boundsPx);
+            breakListener.onBlockBroken(b, t[0], t[1], t[2], t[3]);
+        }
     }
 
     private Body createStaticBoxBody(Rectangle rPx) {
@@ -1,15 +1,35 @@
-
 package com.boltstorms.brainflood.level;
 
 import com.badlogic.gdx.physics.box2d.*;
-import com.badlogic.gdx.math.Vector2;
 
+/**
+ * Static colliders for the wall layer. Wall tiles are merged greedily into maximal
+ * rectangles (widest run first, then grown upwards), one box body per rectangle.
+ * Destroying a tile only splits the rectangle that contains it.
+ * Either build everything with buildAll, or call prepare once and then build/clear
+ * regions on demand (see ColliderStreamer).
+ */
 public class WallPhysics {
 
+    private static final class WallRect {
+        final int x, y, w, h; // tiles
+        Body body;
+
+        WallRect(int x, int y, int w, int h) {
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+        }
+    }
+
     private final World world;
     private final float ppm;
 
-    private Body[][] wallBodies; // [y][x]
+    private WallRect[][] owners; // [y][x] rectangle covering each wall tile
+    private BitGrid walls;
+    private int mapW, mapH, tileW, tileH;
+    private int bodyCount;
 
     public WallPhysics(World world, float ppm) {
         this.world = world;
@@ -17,40 +37,120 @@ public class WallPhysics {
     }
 
     public void buildAll(Level level) {
-        wallBodies = new Body[level.mapH()][level.mapW()];
+        prepare(level);
+        buildRegion(0, 0, mapW - 1, mapH - 1);
+    }
+
+    /** Sets up the tile tables without creating any bodies. */
+    public void prepare(Level level) {
+        mapW = level.mapW();
+        mapH = level.mapH();
+        owners = new WallRect[mapH][mapW];
+        walls = level.getWalls();
+        tileW = level.tileW();
+        tileH = level.tileH();
+        bodyCount = 0;
+    }
+
+    /** Creates merged bodies for the walls in [x0..x1] x [y0..y1] that have none yet. Rectangles stay inside the region. */
+    public void buildRegion(int x0, int y0, int x1, int y1) {
+        if (owners == null) return;
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(mapW - 1, x1);
+        y1 = Math.min(mapH - 1, y1);
+
+        for (int y = y0; y <= y1; y++) {
+            for (int x = walls.nextSetBit(x0, y); x >= 0 && x <= x1; x = walls.nextSetBit(x + 1, y)) {
+                if (owners[y][x] != null) continue;
+
+                // widest run of unclaimed walls on this row
+                int w = 1;
+                while (x + w <= x1 && walls.get(x + w, y) && owners[y][x + w] == null) w++;
 
-        for (int y = 0; y < level.mapH(); y++) {
-            for (int x = 0; x < level.mapW(); x++) {
-                if (!level.isWall(x, y)) continue;
-                wallBodies[y][x] = createWallBody(level, x, y);
+                // grow upwards while the whole run is unclaimed wall
+                int h = 1;
+                while (y + h <= y1 && rowFree(x, y + h, w)) h++;
+
+                addRect(x, y, w, h);
             }
         }
     }
 
-    public void destroyWall(int tx, int ty) {
-        if (wallBodies == null) return;
-        Body b = wallBodies[ty][tx];
-        if (b != null) {
-            world.destroyBody(b);
-            wallBodies[ty][tx] = null;
+    /** Destroys every wall body touching [x0..x1] x [y0..y1]. */
+    public void clearRegion(int x0, int y0, int x1, int y1) {
+        if (owners == null) return;
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(mapW - 1, x1);
+        y1 = Math.min(mapH - 1, y1);
+
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                WallRect r = owners[y][x];
+                if (r != null) removeRect(r);
+            }
         }
     }
 
+    private boolean rowFree(int x, int y, int w) {
+        for (int i = 0; i < w; i++) {
+            if (!walls.get(x + i, y) || owners[y][x + i] != null) return false;
+        }
+        return true;
+    }
+
+    public void destroyWall(int tx, int ty) {
+        if (owners == null) return;
+        if (ty < 0 || ty >= owners.length || tx < 0 || tx >= owners[0].length) return;
+        WallRect r = owners[ty][tx];
+        if (r == null) return;
+
+        removeRect(r);
+
+        // what is left of the rectangle: full-width bands below and above the tile,
+        // and the two pieces of its own row
+        if (ty > r.y) addRect(r.x, r.y, r.w, ty - r.y);
+        if (ty < r.y + r.h - 1) addRect(r.x, ty + 1, r.w, r.y + r.h - 1 - ty);
+        if (tx > r.x) addRect(r.x, ty, tx - r.x, 1);
+        if (tx < r.x + r.w - 1) addRect(tx + 1, ty, r.x + r.w - 1 - tx, 1);
+    }
+
     public void createWall(Level level, int tx, int ty) {
-        // optional helper if you later want to place walls
-        if (wallBodies == null) return;
-        if (wallBodies[ty][tx] != null) return;
-        wallBodies[ty][tx] = createWallBody(level, tx, ty);
+        // optional helper if you later want to place walls (not merged with neighbours)
+        if (owners == null) return;
+        if (owners[ty][tx] != null) return;
+        addRect(tx, ty, 1, 1);
+    }
+
+    /** Number of static wall bodies currently in the world. */
+    public int getBodyCount() { return bodyCount; }
+
+    private void addRect(int tx, int ty, int w, int h) {
+        WallRect r = new WallRect(tx, ty, w, h);
+        r.body = createWallBody(r);
+        bodyCount++;
+        for (int y = ty; y < ty + h; y++) {
+            for (int x = tx; x < tx + w; x++) owners[y][x] = r;
+        }
+    }
+
+    private void removeRect(WallRect r) {
+        world.destroyBody(r.body);
+        bodyCount--;
+        for (int y = r.y; y < r.y + r.h; y++) {
+            for (int x = r.x; x < r.x + r.w; x++) owners[y][x] = null;
+        }
     }
 
-    private Body createWallBody(Level level, int tx, int ty) {
-        float tilePxX = tx * level.tileW();
-        float tilePxY = ty * level.tileH();
+    private Body createWallBody(WallRect r) {
+        float tilePxX = r.x * tileW;
+        float tilePxY = r.y * tileH;
 
-        float cxM = (tilePxX + level.tileW() * 0.5f) / ppm;
-        float cyM = (tilePxY + level.tileH() * 0.5f) / ppm;
-        float hxM = (level.tileW() * 0.5f) / ppm;
-        float hyM = (level.tileH() * 0.5f) / ppm;
+        float cxM = (tilePxX + r.w * tileW * 0.5f) / ppm;
+        float cyM = (tilePxY + r.h * tileH * 0.5f) / ppm;
+        float hxM = (r.w * tileW * 0.5f) / ppm;
+        float hyM = (r.h * tileH * 0.5f) / ppm;
 
         BodyDef bd = new BodyDef();
         bd.type = BodyDef.BodyType.StaticBody;
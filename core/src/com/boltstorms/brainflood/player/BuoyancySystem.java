@@ -4,19 +4,19 @@ package com.boltstorms.brainflood.player;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
-import com.boltstorms.brainflood.level.Level;
+import com.boltstorms.brainflood.level.TileGrid;
 import com.boltstorms.brainflood.water.WaterSystem;
 
 public class BuoyancySystem {
 
-    private final Level level;
+    private final TileGrid grid;
     private final float ppm;
 
     public float buoyancyStrength = 25f;
     public float waterDrag = 4f;
 
-    public BuoyancySystem(Level level, float ppm) {
-        this.level = level;
+    public BuoyancySystem(TileGrid grid, float ppm) {
+        this.grid = grid;
         this.ppm = ppm;
     }
 
@@ -28,12 +28,12 @@ public class BuoyancySystem {
         float px = pM.x * ppm;
         float py = pM.y * ppm;
 
-        int tx = level.pxToTileX(px);
-        int ty = level.pxToTileY(py);
+        int tx = grid.pxToTileX(px);
+        int ty = grid.pxToTileY(py);
 
         if (!water.isInWaterRegion(tx, ty)) return;
 
-        float surfaceM = water.getLocalSurfacePx(tx, ty) / ppm;
+        float surfaceM = water.getSurfacePx(tx, ty) / ppm;
 
         float bottomM = pM.y - PlayerController.PLAYER_HALF_M;
         float submerged = MathUtils.clamp(surfaceM - bottomM, 0f, PlayerController.PLAYER_HALF_M * 2f);
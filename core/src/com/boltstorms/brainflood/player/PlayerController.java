@@ -12,6 +12,10 @@ public class PlayerController {
 
     private Body player;
 
+    // input sampled once per rendered frame, applied on the next fixed step
+    private float move = 0f;
+    private boolean jumpQueued = false;
+
     public Body createPlayer(World world, float xM, float yM) {
         BodyDef bd = new BodyDef();
         bd.type = BodyDef.BodyType.DynamicBody;
@@ -39,19 +43,41 @@ public class PlayerController {
         return player;
     }
 
-    public void update(float dt) {
-        if (player == null) return;
-
+    /** Call once per rendered frame; "just pressed" keys are only visible for one frame. */
+    public void pollInput() {
         float move = 0f;
         if (Gdx.input.isKeyPressed(Input.Keys.A) || Gdx.input.isKeyPressed(Input.Keys.LEFT)) move -= 1f;
         if (Gdx.input.isKeyPressed(Input.Keys.D) || Gdx.input.isKeyPressed(Input.Keys.RIGHT)) move += 1f;
 
+        setInput(move, Gdx.input.isKeyJustPressed(Input.Keys.SPACE));
+    }
+
+    /** Input for the following fixed steps without a keyboard (replays): direction -1..1, and a jump for the next step. */
+    public void setInput(float move, boolean jump) {
+        this.move = move;
+        if (jump) jumpQueued = true;
+    }
+
+    public float getMove() {
+        return move;
+    }
+
+    /** True from a jump press until the fixed step that performs it. */
+    public boolean isJumpQueued() {
+        return jumpQueued;
+    }
+
+    /** Call once per fixed simulation step. */
+    public void update(float dt) {
+        if (player == null) return;
+
         float desiredVx = move * 5f;
         float vx = player.getLinearVelocity().x;
         float impulseX = (desiredVx - vx) * player.getMass();
         player.applyLinearImpulse(new Vector2(impulseX, 0), player.getWorldCenter(), true);
 
-        if (Gdx.input.isKeyJustPressed(Input.Keys.SPACE)) {
+        if (jumpQueued) {
+            jumpQueued = false;
             player.applyLinearImpulse(new Vector2(0, 5f * player.getMass()), player.getWorldCenter(), true);
         }
     }
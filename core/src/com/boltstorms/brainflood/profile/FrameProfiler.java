@@ -0,0 +1,242 @@
+package com.boltstorms.brainflood.profile;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-stage frame times and per-frame counters over a rolling window of frames.
+ *
+ * begin/end (or add) accumulate into the current frame, so a stage that runs several times per
+ * frame (the sim stages with several fixed steps) is summed. endFrame() moves the frame into a
+ * ring holding the last `window` frames and hands it to the listener. Nothing allocates after
+ * construction: summarize() sorts each series into a preallocated scratch array to read p50, p95,
+ * p99 and max from the window.
+ */
+public class FrameProfiler {
+
+    public enum Stage {
+        PLAYER("player"),
+        WATER("water"),
+        MASKS("masks"),         // water mask rebuilds after walls or blocks open
+        BUOYANCY("buoyancy"),
+        COLLIDERS("colliders"),
+        PHYSICS("box2d"),
+        TILES("tiles"),
+        SHAPES("shapes"),       // blocks, player and the ShapeRenderer flush
+        WATER_DRAW("water draw"),
+        TEXT("text"),
+        FRAME("frame");         // the whole render call
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    public enum Counter {
+        CELLS_STEPPED("cells stepped"),
+        WATER_QUADS("water quads"),
+        BODIES("bodies"),
+        MASK_REBUILDS("mask rebuilds");
+
+        public final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    public interface FrameListener {
+        /** Called by endFrame(); getLast() returns the frame that just ended. */
+        void onFrame(FrameProfiler profiler);
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    public static final int DEFAULT_WINDOW = 240; // 4 s at 60 fps
+
+    /** Ignores everything; for sessions nobody is profiling. */
+    public static final FrameProfiler DISABLED = new FrameProfiler(1, false);
+
+    // summarize() columns
+    public static final int P50 = 0, P95 = 1, P99 = 2, MAX = 3;
+
+    private final boolean enabled;
+    private final int window;
+
+    private final long[] starts = new long[STAGES.length];
+    private final long[] stageNanos = new long[STAGES.length];   // current frame
+    private final long[] counts = new long[COUNTERS.length];     // current frame
+
+    private final long[][] stageRing;
+    private final long[][] countRing;
+    private final long[] intervalRing;  // nanos since the previous endFrame
+    private int frames;                 // frames ended so far
+    private long lastFrameEnd;
+
+    private final long[] scratch;
+    private final long[][] stageStats = new long[STAGES.length][4];
+    private final long[][] countStats = new long[COUNTERS.length][4];
+
+    private FrameListener listener;
+
+    public FrameProfiler(int window) {
+        this(window, true);
+    }
+
+    private FrameProfiler(int window, boolean enabled) {
+        this.enabled = enabled;
+        this.window = Math.max(1, window);
+        this.stageRing = new long[STAGES.length][this.window];
+        this.countRing = new long[COUNTERS.length][this.window];
+        this.intervalRing = new long[this.window];
+        this.scratch = new long[this.window];
+    }
+
+    public void setListener(FrameListener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    // ----------------- recording -----------------
+
+    public void begin(Stage stage) {
+        if (enabled) starts[stage.ordinal()] = System.nanoTime();
+    }
+
+    public void end(Stage stage) {
+        if (enabled) stageNanos[stage.ordinal()] += System.nanoTime() - starts[stage.ordinal()];
+    }
+
+    /** Adds time measured elsewhere to the current frame. */
+    public void add(Stage stage, long nanos) {
+        if (enabled) stageNanos[stage.ordinal()] += nanos;
+    }
+
+    /** Adds n to the counter's value for the current frame. */
+    public void count(Counter counter, long n) {
+        if (enabled) counts[counter.ordinal()] += n;
+    }
+
+    /** Sets the counter's value for the current frame (for levels such as body counts). */
+    public void set(Counter counter, long value) {
+        if (enabled) counts[counter.ordinal()] = value;
+    }
+
+    public void endFrame() {
+        if (!enabled) return;
+
+        long now = System.nanoTime();
+        int slot = frames % window;
+        for (int s = 0; s < STAGES.length; s++) {
+            stageRing[s][slot] = stageNanos[s];
+            stageNanos[s] = 0;
+        }
+        for (int c = 0; c < COUNTERS.length; c++) {
+            countRing[c][slot] = counts[c];
+            counts[c] = 0;
+        }
+        intervalRing[slot] = lastFrameEnd == 0 ? 0 : now - lastFrameEnd;
+        lastFrameEnd = now;
+        frames++;
+
+        if (listener != null) listener.onFrame(this);
+    }
+
+    // ----------------- reading -----------------
+
+    /** Frames in the window (at most the window size). */
+    public int getSampleCount() {
+        return Math.min(frames, window);
+    }
+
+    /** Nanos the stage took in the last ended frame. */
+    public long getLast(Stage stage) {
+        return frames == 0 ? 0 : stageRing[stage.ordinal()][(frames - 1) % window];
+    }
+
+    public long getLast(Counter counter) {
+        return frames == 0 ? 0 : countRing[counter.ordinal()][(frames - 1) % window];
+    }
+
+    /** Recomputes the window statistics read by getStat. */
+    public void summarize() {
+        for (int s = 0; s < STAGES.length; s++) stats(stageRing[s], stageStats[s]);
+        for (int c = 0; c < COUNTERS.length; c++) stats(countRing[c], countStats[c]);
+    }
+
+    /** P50, P95, P99 or MAX of the stage's nanos per frame, as of the last summarize(). */
+    public long getStat(Stage stage, int stat) {
+        return stageStats[stage.ordinal()][stat];
+    }
+
+    public long getStat(Counter counter, int stat) {
+        return countStats[counter.ordinal()][stat];
+    }
+
+    /** The counter summed over the window. */
+    public long getTotal(Counter counter) {
+        long total = 0;
+        for (int i = 0, n = getSampleCount(); i < n; i++) total += countRing[counter.ordinal()][i];
+        return total;
+    }
+
+    /** The counter's total over the window per second of wall time, e.g. mask rebuilds per second. */
+    public float getRate(Counter counter) {
+        long nanos = 0;
+        for (int i = 0, n = getSampleCount(); i < n; i++) nanos += intervalRing[i];
+        return nanos == 0 ? 0f : getTotal(counter) * 1e9f / nanos;
+    }
+
+    private void stats(long[] ring, long[] out) {
+        int n = getSampleCount();
+        if (n == 0) {
+            Arrays.fill(out, 0);
+            return;
+        }
+        System.arraycopy(ring, 0, scratch, 0, n);
+        Arrays.sort(scratch, 0, n);
+        out[P50] = scratch[Math.min(n - 1, n / 2)];
+        out[P95] = scratch[Math.min(n - 1, (int) (n * 0.95f))];
+        out[P99] = scratch[Math.min(n - 1, (int) (n * 0.99f))];
+        out[MAX] = scratch[n - 1];
+    }
+
+    /** The window, oldest frame first: frame interval and stage times in ms, then the counters. */
+    public void appendCsv(StringBuilder out) {
+        out.append("frame,interval_ms");
+        for (Stage s : STAGES) out.append(',').append(s.name().toLowerCase(Locale.ROOT)).append("_ms");
+        for (Counter c : COUNTERS) out.append(',').append(c.name().toLowerCase(Locale.ROOT));
+        out.append('\n');
+
+        int n = getSampleCount();
+        for (int i = 0; i < n; i++) {
+            int frame = frames - n + i;
+            int slot = frame % window;
+            out.append(frame).append(',');
+            appendMs(out, intervalRing[slot], 4);
+            for (int s = 0; s < STAGES.length; s++) {
+                out.append(',');
+                appendMs(out, stageRing[s][slot], 4);
+            }
+            for (int c = 0; c < COUNTERS.length; c++) out.append(',').append(countRing[c][slot]);
+            out.append('\n');
+        }
+    }
+
+    /** Appends nanos as milliseconds with the given number of decimals, without going through float formatting. */
+    public static void appendMs(StringBuilder out, long nanos, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        long units = (nanos * scale + 500000) / 1000000;
+        out.append(units / scale);
+        if (decimals == 0) return;
+        out.append('.');
+        long frac = units % scale;
+        for (long d = scale / 10; d > frac && d > 1; d /= 10) out.append('0');
+        out.append(frac);
+    }
+}
@@ -0,0 +1,84 @@
+package com.boltstorms.brainflood.profile;
+
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.Matrix4;
+
+/**
+ * Draws a FrameProfiler's window statistics in the top-left corner of the screen: p50 / p95 / p99
+ * per stage in ms, then the counters. The text is rebuilt a few times per second into one reused
+ * StringBuilder, so leaving the overlay on does not allocate or sort every frame.
+ */
+public class ProfilerOverlay {
+
+    private static final int REFRESH_FRAMES = 15;
+    private static final float PAD = 8f;
+
+    private final FrameProfiler profiler;
+    private final StringBuilder text = new StringBuilder(1024);
+    private final Matrix4 screen = new Matrix4();
+    private int lines;
+    private int sinceRefresh = REFRESH_FRAMES;
+
+    public ProfilerOverlay(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /** Draws over whatever is on screen; batch and shapes must not be drawing. */
+    public void draw(SpriteBatch batch, ShapeRenderer shapes, BitmapFont font, int screenW, int screenH) {
+        if (++sinceRefresh >= REFRESH_FRAMES) {
+            sinceRefresh = 0;
+            rebuildText();
+        }
+        screen.setToOrtho2D(0, 0, screenW, screenH);
+
+        float lineH = font.getLineHeight();
+        float boxH = lines * lineH + PAD * 2f;
+        shapes.setProjectionMatrix(screen);
+        shapes.begin(ShapeRenderer.ShapeType.Filled);
+        shapes.setColor(0f, 0f, 0f, 0.6f);
+        shapes.rect(0, screenH - boxH, Math.min(screenW, 34f * lineH), boxH);
+        shapes.end();
+
+        batch.setProjectionMatrix(screen);
+        batch.begin();
+        font.draw(batch, text, PAD, screenH - PAD);
+        batch.end();
+    }
+
+    private void rebuildText() {
+        profiler.summarize();
+        text.setLength(0);
+        lines = 0;
+
+        text.append("ms          p50    p95    p99");
+        lines++;
+        for (FrameProfiler.Stage s : FrameProfiler.Stage.values()) {
+            text.append('\n').append(s.label);
+            for (int pad = s.label.length(); pad < 10; pad++) text.append(' ');
+            appendStat(s, FrameProfiler.P50);
+            appendStat(s, FrameProfiler.P95);
+            appendStat(s, FrameProfiler.P99);
+            lines++;
+        }
+
+        text.append('\n').append(FrameProfiler.Counter.CELLS_STEPPED.label).append(' ')
+                .append(profiler.getStat(FrameProfiler.Counter.CELLS_STEPPED, FrameProfiler.P50)).append(" / ")
+                .append(profiler.getStat(FrameProfiler.Counter.CELLS_STEPPED, FrameProfiler.P95)).append(" p95");
+        text.append('\n').append(FrameProfiler.Counter.WATER_QUADS.label).append(' ')
+                .append(profiler.getLast(FrameProfiler.Counter.WATER_QUADS));
+        text.append("   ").append(FrameProfiler.Counter.BODIES.label).append(' ')
+                .append(profiler.getLast(FrameProfiler.Counter.BODIES));
+        text.append('\n').append(FrameProfiler.Counter.MASK_REBUILDS.label).append(' ');
+        long tenths = Math.round(profiler.getRate(FrameProfiler.Counter.MASK_REBUILDS) * 10f);
+        text.append(tenths / 10).append('.').append(tenths % 10).append("/s");
+        lines += 3;
+    }
+
+    private void appendStat(FrameProfiler.Stage stage, int stat) {
+        int start = text.length();
+        FrameProfiler.appendMs(text, profiler.getStat(stage, stat), 2);
+        for (int width = text.length() - start; width < 7; width++) text.insert(start, ' ');
+    }
+}
@@ -1,37 +1,58 @@
 package com.boltstorms.brainflood.screens;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
 import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.maps.MapLayer;
 import com.badlogic.gdx.maps.tiled.TiledMap;
-import com.badlogic.gdx.maps.tiled.TmxMapLoader;
 import com.badlogic.gdx.maps.tiled.renderers.OrthogonalTiledMapRenderer;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.*;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.BitmapFontCache;
+import com.badlogic.gdx.graphics.g2d.GlyphLayout;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 
+import com.boltstorms.brainflood.BrainFloodGame;
 import com.boltstorms.brainflood.level.Level;
 import com.boltstorms.brainflood.level.VocabBlockSystem;
-import com.boltstorms.brainflood.level.WallPhysics;
-import com.boltstorms.brainflood.player.BuoyancySystem;
 import com.boltstorms.brainflood.player.PlayerController;
+import com.boltstorms.brainflood.profile.FrameProfiler;
+import com.boltstorms.brainflood.profile.ProfilerOverlay;
+import com.boltstorms.brainflood.session.InputLog;
+import com.boltstorms.brainflood.session.LevelSession;
+import com.boltstorms.brainflood.text.GlyphCache;
 import com.boltstorms.brainflood.water.WaterSystem;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
 
 import java.util.List;
 
 
 public class GameScreen implements Screen {
-    private com.boltstorms.brainflood.level.VocabBlockSystem vocabBlocks;
-    private static final String MAP_PATH = "Stages/level_01.tmx";
-    private static final float PPM = 32f;
+    private static final float PPM = LevelSession.PPM;
 
+    // fixed simulation step; rendering interpolates between the last two steps
+    private static final float STEP = LevelSession.STEP;
+    private static final int MAX_STEPS_PER_FRAME = 5;
+    private static final float MAX_FRAME_TIME = 0.25f;
+
+    // the camera shows at most this many tiles and follows the player over bigger levels
+    private static final int VIEW_TILES_W = 18;
+    private static final int VIEW_TILES_H = 32;
+    private static final int CULL_MARGIN_TILES = 2; // drawn past the view edge (surface waves, label overhang)
+
+    private final BrainFloodGame game;
+    private final LevelSession session;
+
+    private VocabBlockSystem vocabBlocks;
     private Level level;
 
     private TiledMap map;
@@ -44,145 +65,165 @@ public class GameScreen implements Screen {
     private World world;
     private Box2DDebugRenderer debug;
 
-    private WallPhysics wallPhysics;
     private WaterSystem waterSystem;
-    private FreeTypeFontGenerator fontGen;
+    private GlyphCache glyphs;
     private PlayerController playerController;
-    private BuoyancySystem buoyancySystem;
     private SpriteBatch batch;
-    private BitmapFont font;
+    private BitmapFontCache labels;            // laid-out labels of labelBlocks, rebuilt when stale
+    private int labelsVersion = -1;
+    private final IntArray visibleBlocks = new IntArray();
+    private final IntArray labelBlocks = new IntArray();
+    private final GlyphLayout labelLayout = new GlyphLayout();
+
+    private float accumulator = 0f;
+    private int stepCount = 0;                 // fixed steps run, the clock of the input log
+    private final Vector2 prevPlayerM = new Vector2();
+    private InputLog recording;                // null unless the game records input
+
+    private FrameProfiler profiler;
+    private ProfilerOverlay profilerOverlay;
+    private boolean showProfiler;              // F3; F4 writes the profiler window to profiles/
+
+    /** session must be finished (LevelSession.load or LevelPreloader.take); the screen owns it from here. */
+    public GameScreen(BrainFloodGame game, LevelSession session) {
+        this.game = game;
+        this.session = session;
+    }
+
     @Override
     public void show() {
-        map = new TmxMapLoader().load(MAP_PATH);
-        level = new Level(map);
-        mapRenderer = new OrthogonalTiledMapRenderer(map);
+        map = session.getMap();
+        level = session.getLevel();
+        world = session.getWorld();
+        vocabBlocks = session.getVocabBlocks();
+        waterSystem = session.getWaterSystem();
+        playerController = session.getPlayerController();
+        glyphs = game.getGlyphs();
 
+        mapRenderer = new OrthogonalTiledMapRenderer(map);
         shapes = new ShapeRenderer();
 
         camPx = new OrthographicCamera();
-        viewport = new FitViewport(level.mapWidthPx(), level.mapHeightPx(), camPx);
+        viewport = new FitViewport(Math.min(level.mapWidthPx(), VIEW_TILES_W * level.tileW()),
+                Math.min(level.mapHeightPx(), VIEW_TILES_H * level.tileH()), camPx);
         viewport.apply();
-        camPx.position.set(level.mapWidthPx() / 2f, level.mapHeightPx() / 2f, 0);
-        camPx.update();
+        followCamera(session.getSpawnM().x * PPM, session.getSpawnM().y * PPM);
 
-        world = new World(new Vector2(0, -18f), true);
         debug = new Box2DDebugRenderer();
-
-        wallPhysics = new WallPhysics(world, PPM);
-        wallPhysics.buildAll(level);
-        vocabBlocks = new com.boltstorms.brainflood.level.VocabBlockSystem(level, world, PPM);
-
-// Your vocab pool (can later come from JSON)
-        List<VocabBlockSystem.VocabPair> pool = new java.util.ArrayList<VocabBlockSystem.VocabPair>();
-        pool.add(new VocabBlockSystem.VocabPair("狗", "dog"));
-        pool.add(new VocabBlockSystem.VocabPair("猫", "cat"));
-        pool.add(new VocabBlockSystem.VocabPair("水", "water"));
-        pool.add(new VocabBlockSystem.VocabPair("火", "fire"));
-        pool.add(new VocabBlockSystem.VocabPair("人", "person"));
-        pool.add(new VocabBlockSystem.VocabPair("山", "mountain"));
-
-
-        vocabBlocks.loadAndRandomize(pool, 4);
         batch = new SpriteBatch();
-        font = new BitmapFont(); // default font, fine for testing
-        fontGen = new FreeTypeFontGenerator(Gdx.files.internal("NotoSansSC-VariableFont_wght.ttf"));
-        FreeTypeFontGenerator.FreeTypeFontParameter p = new FreeTypeFontGenerator.FreeTypeFontParameter();
-        p.size = 18;                 // adjust
-        p.characters =
-                FreeTypeFontGenerator.DEFAULT_CHARS +
-                        "狗猫水火人山" +         // add any Hanzi you will use (or build from your vocab list)
-                        "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说产种面而方后多定行学法所民得经十三之进着等部度家电力里如水化高自二理起小物现实加量都两体制机当使点从业本去把性好应开它合还因由其些然前外天政四日那社义事平形相全表间样与关各重新线内数正心反你明看原又么利比或但质气第向道命此变条只没结解问意建月公无系军很情者最立代想已通并提直题党程展五果料象员革位入常文总次品式活设及管特件长求老头基资边流路级少图山统接知较将组见计别她手角期根论运农指几九区强放决西被干做必战先回则任取据处队南给色光门即保治北造百规热领七海口东导器压志世金增争济阶油思术极交受联什认六共权收证改清己美再采转更单风切打白教速花带安场身车例真务具万每目至达走积示议声报斗完类八离华名确才科张信马节话米整空元况今集温传土许步群广石记需段研界拉林律叫且究观越织装影算低持音众书布复容儿须际商非验连断深难近矿千周委素技备半办青省列习响约支般史感劳便团往酸历市克何除消构府称太准精值号率族维划选标写存候毛亲快效斯院查江型眼王按格养易置派层片始却专状育厂京识适属圆包火住调满县局照参红细引听该铁价严龙飞";
-        font = fontGen.generateFont(p);
-        // objects
-        Vector2 spawnPx = level.getObjectCenterPx(Level.OBJ_PLAYER_SPAWN);
-        Vector2 inletPx = level.getObjectCenterPx(Level.OBJ_INLET);
-        Vector2 outletPx = level.getObjectCenterPx(Level.OBJ_OUTLET);
-
-        int inletTx = level.pxToTileX(inletPx.x);
-        int inletTy = level.pxToTileY(inletPx.y);
-        int outletTx = level.pxToTileX(outletPx.x);
-        int outletTy = level.pxToTileY(outletPx.y);
-
-
-        waterSystem = new WaterSystem(level, inletTx, inletTy, outletTx, outletTy,
-                (tx, ty) -> level.isWall(tx, ty) || vocabBlocks.isSolidTile(tx, ty)
-        );
-
-        playerController = new PlayerController();
-        buoyancySystem = new BuoyancySystem(level, PPM);
-
-        Vector2 spawnM = new Vector2(spawnPx.x / PPM, spawnPx.y / PPM);
-        playerController.createPlayer(world, spawnM.x, spawnM.y);
+        prevPlayerM.set(session.getSpawnM());
+        if (game.isRecordingInput()) recording = InputLog.record(session);
+
+        profiler = game.getProfiler();
+        session.setProfiler(profiler);
+        profilerOverlay = new ProfilerOverlay(profiler);
     }
     private void handleMouseClick() {
         if (!Gdx.input.justTouched()) return;
 
         Vector2 worldPx = viewport.unproject(new Vector2(Gdx.input.getX(), Gdx.input.getY()));
 
-        // 1) try vocab match click first
-        boolean used = vocabBlocks.handleClick(worldPx.x, worldPx.y);
-        if (used) {
-            // if any block broke, water geometry changed
-            waterSystem.onLevelChanged();
+        // 1) try vocab match click first (broken blocks update the water through the break listener)
+        int block = vocabBlocks.blockIndexAt(worldPx.x, worldPx.y);
+        if (block >= 0 && session.clickBlock(block)) {
+            if (recording != null) recording.clickBlock(stepCount, block);
             return;
         }
 
         // 2) (optional) still allow breaking real walls
-        int tx = level.pxToTileX(worldPx.x);
-        int ty = level.pxToTileY(worldPx.y);
-
-        if (!level.isWall(tx, ty)) return;
-
-        level.removeWall(tx, ty);
-        wallPhysics.destroyWall(tx, ty);
-        waterSystem.onLevelChanged();
+        breakWallAt(worldPx);
     }
 
     private void handleMouseDestroy() {
         if (!Gdx.input.justTouched()) return;
 
-        Vector2 worldPx = viewport.unproject(new Vector2(Gdx.input.getX(), Gdx.input.getY()));
+        breakWallAt(viewport.unproject(new Vector2(Gdx.input.getX(), Gdx.input.getY())));
+    }
+
+    private void breakWallAt(Vector2 worldPx) {
         int tx = level.pxToTileX(worldPx.x);
         int ty = level.pxToTileY(worldPx.y);
 
-        if (!level.isWall(tx, ty)) return;
-
-        level.removeWall(tx, ty);
-        wallPhysics.destroyWall(tx, ty);
-
-        waterSystem.onLevelChanged();
+        if (session.breakWall(tx, ty) && recording != null) recording.breakWall(stepCount, tx, ty);
     }
 
-    private void update(float dt) {
+    /** Per-frame input: clicks and "just pressed" keys must be read exactly once per frame. */
+    private void handleInput() {
         handleMouseDestroy();
-
-        playerController.update(dt);
-        waterSystem.update(dt);
-        buoyancySystem.apply(playerController.getPlayer(), waterSystem, dt);
+        playerController.pollInput();
+        if (recording != null) {
+            recording.move(stepCount, playerController.getMove());
+            if (playerController.isJumpQueued()) recording.jump(stepCount);
+        }
         handleMouseClick();
+    }
 
-        world.step(1f / 60f, 6, 2);
+    /** One fixed simulation step. */
+    private void update(float dt) {
+        if (playerController.getPlayer() != null) prevPlayerM.set(playerController.getPlayer().getPosition());
+
+        session.step(dt);
+        stepCount++;
     }
 
     @Override
     public void render(float delta) {
-        float dt = Math.min(delta, 1f / 30f);
-        update(dt);
+        // no win condition yet: N jumps to the (preloaded) next level
+        if (Gdx.input.isKeyJustPressed(Input.Keys.N)) {
+            game.advance(); // disposes this screen
+            return;
+        }
+        if (Gdx.input.isKeyJustPressed(Input.Keys.F3)) showProfiler = !showProfiler;
+        if (Gdx.input.isKeyJustPressed(Input.Keys.F4)) saveProfile();
+        profiler.begin(FrameProfiler.Stage.FRAME);
+        handleInput();
+
+        // fixed-step loop: same sim cost per real second at any refresh rate
+        accumulator += Math.min(delta, MAX_FRAME_TIME);
+        int steps = 0;
+        while (accumulator >= STEP && steps < MAX_STEPS_PER_FRAME) {
+            update(STEP);
+            accumulator -= STEP;
+            steps++;
+        }
+        // too far behind: drop the backlog instead of spiralling
+        if (accumulator >= STEP) accumulator = 0f;
+        float alpha = accumulator / STEP;
 
         Gdx.gl.glClearColor(0.93f, 0.93f, 0.93f, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
-        camPx.update();
+        Body player = playerController.getPlayer();
+        float ppx = 0f, ppy = 0f;
+        if (player != null) {
+            Vector2 pm = player.getPosition();
+            ppx = (prevPlayerM.x + (pm.x - prevPlayerM.x) * alpha) * PPM;
+            ppy = (prevPlayerM.y + (pm.y - prevPlayerM.y) * alpha) * PPM;
+            followCamera(ppx, ppy);
+        }
         mapRenderer.setView(camPx);
 
+        // visible area plus margin; everything below only draws what intersects it
+        float marginPx = CULL_MARGIN_TILES * Math.max(level.tileW(), level.tileH());
+        float viewX0 = camPx.position.x - camPx.viewportWidth * camPx.zoom / 2f - marginPx;
+        float viewY0 = camPx.position.y - camPx.viewportHeight * camPx.zoom / 2f - marginPx;
+        float viewX1 = camPx.position.x + camPx.viewportWidth * camPx.zoom / 2f + marginPx;
+        float viewY1 = camPx.position.y + camPx.viewportHeight * camPx.zoom / 2f + marginPx;
+        vocabBlocks.blocksInView(viewX0, viewY0, viewX1, viewY1, visibleBlocks);
+
+        profiler.begin(FrameProfiler.Stage.TILES);
         renderLayerIfExists(Level.LAYER_BG);
+        profiler.end(FrameProfiler.Stage.TILES);
 
         Gdx.gl.glEnable(GL20.GL_BLEND);
         Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
 
+        profiler.begin(FrameProfiler.Stage.SHAPES);
         shapes.setProjectionMatrix(camPx.combined);
         shapes.begin(ShapeRenderer.ShapeType.Filled);
-        for (VocabBlockSystem.VocabBlock b : vocabBlocks.getBlocks()) {
+        List<VocabBlockSystem.VocabBlock> blocks = vocabBlocks.getBlocks();
+        for (int k = 0; k < visibleBlocks.size; k++) {
+            VocabBlockSystem.VocabBlock b = blocks.get(visibleBlocks.get(k));
             if (b.broken) continue;
 
             if (b.selected) shapes.setColor(1f, 1f, 0f, 0.35f); // selected glow
@@ -192,37 +233,111 @@ public class GameScreen implements Screen {
             shapes.rect(b.boundsPx.x, b.boundsPx.y, b.boundsPx.width, b.boundsPx.height);
         }
 
+        profiler.end(FrameProfiler.Stage.SHAPES);
+
         // Water draws itself (includes inlet stream)
-        waterSystem.render(shapes);
+        profiler.begin(FrameProfiler.Stage.WATER_DRAW);
+        waterSystem.render(shapes, alpha, level.pxToTileX(viewX0), level.pxToTileY(viewY0),
+                level.pxToTileX(viewX1), level.pxToTileY(viewY1));
+        profiler.end(FrameProfiler.Stage.WATER_DRAW);
 
+        profiler.begin(FrameProfiler.Stage.SHAPES);
         // Player
-        if (playerController.getPlayer() != null) {
+        if (player != null) {
             shapes.setColor(0.1f, 0.85f, 0.2f, 1f);
-            Vector2 pm = playerController.getPlayer().getPosition();
-            float ppx = pm.x * PPM;
-            float ppy = pm.y * PPM;
             float halfPx = PlayerController.PLAYER_HALF_M * PPM;
             shapes.rect(ppx - halfPx, ppy - halfPx, halfPx * 2f, halfPx * 2f);
         }
 
         shapes.end();
+        profiler.end(FrameProfiler.Stage.SHAPES);
 
+        profiler.begin(FrameProfiler.Stage.TILES);
         renderLayerIfExists(Level.LAYER_WALL);
         renderLayerIfExists(Level.LAYER_FG);
         renderLayerIfExists(Level.LAYER_FG_DECOR);
+        profiler.end(FrameProfiler.Stage.TILES);
 // Text needs SpriteBatch, not ShapeRenderer
+        profiler.begin(FrameProfiler.Stage.TEXT);
         batch.setProjectionMatrix(camPx.combined);
+        // the shared font may have been replaced while preloading another level's glyphs
+        if (labelsVersion != vocabBlocks.getLabelVersion() || labels.getFont() != glyphs.getFont()
+                || !visibleBlocks.equals(labelBlocks)) {
+            rebuildLabels();
+        }
         batch.begin();
-        for (VocabBlockSystem.VocabBlock b : vocabBlocks.getBlocks()) {
+        labels.draw(batch);
+        batch.end();
+        profiler.end(FrameProfiler.Stage.TEXT);
+        // debug.render(world, camPx.combined);
+
+        session.reportCounters();
+        profiler.end(FrameProfiler.Stage.FRAME);
+        profiler.endFrame();
+        if (showProfiler) {
+            profilerOverlay.draw(batch, shapes, glyphs.getFont(), Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+        }
+    }
+
+    /** Lays out the labels of the visible unbroken blocks, centred in their blocks. */
+    private void rebuildLabels() {
+        BitmapFont font = glyphs.getFont();
+        if (labels == null || labels.getFont() != font) labels = new BitmapFontCache(font, true);
+        labels.clear();
+        List<VocabBlockSystem.VocabBlock> blocks = vocabBlocks.getBlocks();
+        for (int k = 0; k < visibleBlocks.size; k++) {
+            VocabBlockSystem.VocabBlock b = blocks.get(visibleBlocks.get(k));
             if (b.broken) continue;
 
-            // center-ish text (simple)
-            float tx = b.boundsPx.x + 6f;
-            float ty = b.boundsPx.y + b.boundsPx.height * 0.65f;
-            font.draw(batch, b.text, tx, ty);
+            labelLayout.setText(font, b.text);
+            float tx = b.boundsPx.x + (b.boundsPx.width - labelLayout.width) * 0.5f;
+            float ty = b.boundsPx.y + (b.boundsPx.height + labelLayout.height) * 0.5f; // y is the top of the text
+            labels.addText(labelLayout, tx, ty);
+        }
+        labelsVersion = vocabBlocks.getLabelVersion();
+        labelBlocks.clear();
+        labelBlocks.addAll(visibleBlocks);
+    }
+
+    /** Centres the camera on (x, y) px, clamped so it never shows past the map edges. */
+    private void followCamera(float x, float y) {
+        float halfW = viewport.getWorldWidth() / 2f;
+        float halfH = viewport.getWorldHeight() / 2f;
+        camPx.position.set(
+                MathUtils.clamp(x, halfW, Math.max(halfW, level.mapWidthPx() - halfW)),
+                MathUtils.clamp(y, halfH, Math.max(halfH, level.mapHeightPx() - halfH)), 0);
+        camPx.update();
+    }
+
+    /** Writes the input log to replays/ in local storage, for :tools SessionReplayer. */
+    private void saveRecording() {
+        recording.finish(stepCount, waterSystem.getTotalWaterUnits());
+        if (!Gdx.files.isLocalStorageAvailable()) return;
+
+        String name = session.getMapPath();
+        name = name.substring(name.lastIndexOf('/') + 1).replaceFirst("\\.[^.]*$", "");
+        FileHandle file = Gdx.files.local("replays/" + name + "_" + TimeUtils.millis() + InputLog.EXTENSION);
+        try {
+            recording.write(file);
+            Gdx.app.log("REPLAY", "Recorded " + stepCount + " steps, " + recording.getEventCount() + " inputs to " + file.path());
+        } catch (RuntimeException e) {
+            Gdx.app.error("REPLAY", "Could not write " + file.path(), e);
+        }
+    }
+
+    /** Writes the profiler's window (one row per frame) to profiles/ in local storage. */
+    private void saveProfile() {
+        if (!Gdx.files.isLocalStorageAvailable()) return;
+
+        StringBuilder csv = new StringBuilder(256 * (profiler.getSampleCount() + 1));
+        profiler.appendCsv(csv);
+        FileHandle file = Gdx.files.local("profiles/frames_" + TimeUtils.millis() + ".csv");
+        try {
+            file.writeString(csv.toString(), false, "UTF-8");
+            Gdx.app.log("PROFILE", "Wrote " + profiler.getSampleCount() + " frames to " + file.path());
+        } catch (RuntimeException e) {
+            Gdx.app.error("PROFILE", "Could not write " + file.path(), e);
         }
-        batch.end();
-        // debug.render(world, camPx.combined);
     }
 
     private void renderLayerIfExists(String layerName) {
@@ -233,7 +348,7 @@ public class GameScreen implements Screen {
 
     @Override
     public void resize(int width, int height) {
-        if (viewport != null) viewport.update(width, height, true);
+        if (viewport != null) viewport.update(width, height, false); // the camera follows the player
     }
 
     @Override public void pause() {}
@@ -244,11 +359,9 @@ public class GameScreen implements Screen {
     public void dispose() {
         shapes.dispose();
         debug.dispose();
-        world.dispose();
         mapRenderer.dispose();
-        map.dispose();
         batch.dispose();
-        font.dispose();
-        if (fontGen != null) fontGen.dispose();
+        if (recording != null) saveRecording();
+        session.dispose(); // water, world and map
     }
 }
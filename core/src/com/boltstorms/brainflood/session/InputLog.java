@@ -0,0 +1,203 @@
+package com.boltstorms.brainflood.session;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.IntArray;
+import com.boltstorms.brainflood.player.PlayerController;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The inputs of one played level, by fixed step, so a headless run (:tools SessionReplayer) can
+ * feed them back to a LevelSession built with the same seed and flood the level exactly as it was
+ * played. Clicks are stored already resolved to the wall tile or vocab block they hit, so replaying
+ * needs no camera or screen size. An event recorded at step n is applied before step n runs.
+ *
+ * Layout (big-endian):
+ *   int magic, int version, str mapPath, long seed, byte parallelWater, int steps, long waterUnits
+ *   int eventCount, per event: varint step delta, byte type, then
+ *     MOVE: byte direction   JUMP: -   WALL: varint tx, varint ty   BLOCK: varint block index
+ * str = u16 length + UTF-8 bytes. waterUnits is WaterSystem.getTotalWaterUnits() after the last
+ * step, so a replay can tell when it diverged.
+ */
+public class InputLog {
+
+    public static final int MAGIC = 0x42465250; // "BFRP"
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".bfrec";
+
+    public static final byte MOVE = 0;  // a = direction -1, 0 or 1, held until the next MOVE
+    public static final byte JUMP = 1;
+    public static final byte WALL = 2;  // a, b = tile broken
+    public static final byte BLOCK = 3; // a = vocab block clicked
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String mapPath;
+    private final long seed;
+    private final boolean parallelWater; // the parallel solver's results differ from the sequential sweep's
+    private final IntArray events = new IntArray(); // step, type, a, b per event
+    private int steps;
+    private long waterUnits = -1;
+
+    // recording: the player input only produces an event when it changes
+    private int lastMove;
+    private int lastJumpStep = -1;
+
+    public InputLog(String mapPath, long seed, boolean parallelWater) {
+        this.mapPath = mapPath;
+        this.seed = seed;
+        this.parallelWater = parallelWater;
+    }
+
+    /** An empty log for session, which must not have been stepped yet. */
+    public static InputLog record(LevelSession session) {
+        return new InputLog(session.getMapPath(), session.getSeed(),
+                session.getWaterSystem().getSolverThreads() > 1);
+    }
+
+    // ----------------- recording (step = fixed steps run so far) -----------------
+
+    public void move(int step, float move) {
+        int dir = move < 0f ? -1 : move > 0f ? 1 : 0;
+        if (dir == lastMove) return;
+        lastMove = dir;
+        add(step, MOVE, dir, 0);
+    }
+
+    /** A jump stays queued until the next step, so it is recorded once per step. */
+    public void jump(int step) {
+        if (step == lastJumpStep) return;
+        lastJumpStep = step;
+        add(step, JUMP, 0, 0);
+    }
+
+    public void breakWall(int step, int tx, int ty) {
+        add(step, WALL, tx, ty);
+    }
+
+    public void clickBlock(int step, int index) {
+        add(step, BLOCK, index, 0);
+    }
+
+    /** Ends the recording after steps fixed steps that left waterUnits of water. */
+    public void finish(int steps, long waterUnits) {
+        this.steps = steps;
+        this.waterUnits = waterUnits;
+    }
+
+    private void add(int step, byte type, int a, int b) {
+        events.add(step);
+        events.add(type);
+        events.add(a);
+        events.add(b);
+    }
+
+    // ----------------- replay -----------------
+
+    public String getMapPath() { return mapPath; }
+    public long getSeed() { return seed; }
+    public boolean isParallelWater() { return parallelWater; }
+    public int getSteps() { return steps; }
+    public long getWaterUnits() { return waterUnits; }
+
+    public int getEventCount() { return events.size / 4; }
+    public int getEventStep(int k) { return events.get(k * 4); }
+    public byte getEventType(int k) { return (byte) events.get(k * 4 + 1); }
+
+    /** Feeds event k to session, the way GameScreen applied it when it was recorded. */
+    public void apply(int k, LevelSession session) {
+        int a = events.get(k * 4 + 2), b = events.get(k * 4 + 3);
+        PlayerController player = session.getPlayerController();
+        switch (getEventType(k)) {
+            case MOVE: player.setInput(a, false); break;
+            case JUMP: player.setInput(player.getMove(), true); break;
+            case WALL: session.breakWall(a, b); break;
+            case BLOCK: session.clickBlock(a); break;
+            default: throw new IllegalStateException("Unknown input event " + getEventType(k));
+        }
+    }
+
+    // ----------------- file format -----------------
+
+    public void write(FileHandle file) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + events.size * 2);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mapPath);
+            out.writeLong(seed);
+            out.writeBoolean(parallelWater);
+            out.writeInt(steps);
+            out.writeLong(waterUnits);
+
+            out.writeInt(getEventCount());
+            int prevStep = 0;
+            for (int k = 0; k < getEventCount(); k++) {
+                int a = events.get(k * 4 + 2), b = events.get(k * 4 + 3);
+                writeVarInt(out, getEventStep(k) - prevStep);
+                prevStep = getEventStep(k);
+                out.writeByte(getEventType(k));
+                switch (getEventType(k)) {
+                    case MOVE: out.writeByte(a); break;
+                    case WALL: writeVarInt(out, a); writeVarInt(out, b); break;
+                    case BLOCK: writeVarInt(out, a); break;
+                    default: break;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e); // ByteArrayOutputStream does not throw
+        }
+        file.writeBytes(bytes.toByteArray(), false);
+    }
+
+    public static InputLog read(FileHandle file) {
+        ByteBuffer buf = ByteBuffer.wrap(file.readBytes());
+        if (buf.getInt() != MAGIC) throw new RuntimeException("Not an input log: " + file.path());
+        int version = buf.getInt();
+        if (version != VERSION) throw new RuntimeException("Input log " + file.path() + " has version " + version);
+
+        byte[] path = new byte[buf.getShort() & 0xFFFF];
+        buf.get(path);
+        InputLog log = new InputLog(new String(path, UTF8), buf.getLong(), buf.get() != 0);
+        log.steps = buf.getInt();
+        log.waterUnits = buf.getLong();
+
+        int step = 0;
+        for (int k = 0, n = buf.getInt(); k < n; k++) {
+            step += readVarInt(buf);
+            byte type = buf.get();
+            int a = 0, b = 0;
+            switch (type) {
+                case MOVE: a = buf.get(); break;
+                case JUMP: break;
+                case WALL: a = readVarInt(buf); b = readVarInt(buf); break;
+                case BLOCK: a = readVarInt(buf); break;
+                default: throw new RuntimeException("Corrupt input log " + file.path() + ": event type " + type);
+            }
+            log.add(step, type, a, b);
+        }
+        return log;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarInt(ByteBuffer buf) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+}
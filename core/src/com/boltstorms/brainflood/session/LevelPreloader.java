@@ -0,0 +1,95 @@
+package com.boltstorms.brainflood.session;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.boltstorms.brainflood.text.GlyphCache;
+
+/**
+ * Loads one level in the background while another is played. LevelSession.prepare runs on a
+ * single worker thread; once it is done, update() spends a per-frame time budget on the
+ * session's GL steps, so by the time the level is wanted take() only hands it over. The same
+ * worker writes the glyph cache and rasterises a font the cache could not cover.
+ */
+public class LevelPreloader implements Disposable {
+
+    private final AsyncExecutor executor = new AsyncExecutor(1, "level-preload");
+    private final GlyphCache glyphs;
+
+    private String mapPath;
+    private AsyncResult<LevelSession> pending; // worker half still running (or not yet collected)
+    private LevelSession session;              // worker half done, GL half in progress or done
+
+    public LevelPreloader(GlyphCache glyphs) {
+        this.glyphs = glyphs;
+        glyphs.setExecutor(executor);
+    }
+
+    /** Starts preparing mapPath, dropping whatever was preloaded before. */
+    public void start(final String mapPath) {
+        discard();
+        this.mapPath = mapPath;
+        pending = executor.submit(() -> LevelSession.prepare(mapPath));
+    }
+
+    /** Runs GL steps of the preloaded level for at most budgetMs. Render thread, once per frame. */
+    public void update(float budgetMs) {
+        if (session == null && !collect(false)) return;
+
+        long deadline = TimeUtils.nanoTime() + (long) (budgetMs * 1000000f);
+        while (!session.finishStep(glyphs)) {
+            if (TimeUtils.nanoTime() >= deadline) break;
+        }
+    }
+
+    public boolean isReady() {
+        return session != null && session.isReady();
+    }
+
+    public String getMapPath() { return mapPath; }
+
+    /**
+     * The preloaded level, finishing whatever is left synchronously. Null if nothing was started or
+     * the background load failed; the preloader is empty afterwards.
+     */
+    public LevelSession take() {
+        if (session == null && !collect(true)) return null;
+        while (!session.finishStep(glyphs)) { }
+
+        LevelSession s = session;
+        session = null;
+        mapPath = null;
+        return s;
+    }
+
+    /** Moves the worker's result into session. Returns false while it is still running or if it failed. */
+    private boolean collect(boolean wait) {
+        if (pending == null || (!wait && !pending.isDone())) return false;
+        AsyncResult<LevelSession> result = pending;
+        pending = null;
+        try {
+            session = result.get();
+        } catch (GdxRuntimeException e) {
+            Gdx.app.error("LOAD", "Preloading " + mapPath + " failed", e);
+            mapPath = null;
+        }
+        return session != null;
+    }
+
+    private void discard() {
+        if (pending != null) collect(true);
+        if (session != null) session.dispose();
+        session = null;
+        mapPath = null;
+    }
+
+    @Override
+    public void dispose() {
+        discard();
+        executor.dispose(); // waits for glyph cache writes still queued
+        glyphs.setExecutor(null);
+    }
+}
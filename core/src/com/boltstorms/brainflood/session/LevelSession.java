@@ -0,0 +1,298 @@
+package com.boltstorms.brainflood.session;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Disposable;
+import com.boltstorms.brainflood.level.ColliderStreamer;
+import com.boltstorms.brainflood.level.CompiledLevel;
+import com.boltstorms.brainflood.level.Level;
+import com.boltstorms.brainflood.level.VocabBlockSystem;
+import com.boltstorms.brainflood.level.WallPhysics;
+import com.boltstorms.brainflood.player.BuoyancySystem;
+import com.boltstorms.brainflood.player.PlayerController;
+import com.boltstorms.brainflood.profile.FrameProfiler;
+import com.boltstorms.brainflood.text.GlyphCache;
+import com.boltstorms.brainflood.vocab.VocabDictionary;
+import com.boltstorms.brainflood.water.WaterSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Everything one level needs while it is played: map, walls, Box2D world, vocab blocks, water and player.
+ *
+ * prepare() does the CPU work (parsing, collider bake, water masks, vocab selection) and touches no GL,
+ * so it can run on a worker thread. finishStep() then does the GL work on the render thread in small
+ * slices: one tileset texture, a few glyphs or one font page per call. A TMX level without a compiled .bflevel next
+ * to it is converted in memory (TmxCompiler) and loads the same way. loadHeadless() skips the
+ * tileset images altogether, for runs without GL (Gdx.gl is null on the headless backend).
+ *
+ * Play goes through step() and the input actions (breakWall, clickBlock, the player's setInput), so a
+ * session built with the same seed and fed the same InputLog floods exactly the same way.
+ */
+public class LevelSession implements Disposable {
+
+    public static final float PPM = 32f;
+    public static final float STEP = 1f / 60f; // fixed simulation step, recorded inputs count these
+    private static final String VOCAB_DICT_PATH = "vocab/vocab.bfdict";
+    private static final String VOCAB_TAG = "hsk1";
+    private static final int PARALLEL_WATER_MIN_TILES = 256 * 256;
+    private static final int STREAM_COLLIDERS_MIN_TILES = 128 * 128;
+    private static final int GLYPHS_PER_STEP = 8;
+
+    private final String mapPath;
+    private final long seed;        // vocab selection and placement
+    private CompiledLevel compiled; // tilesets still to upload; null once uploaded
+
+    private TiledMap map;
+    private Level level;
+    private World world;
+    private WallPhysics wallPhysics;
+    private ColliderStreamer colliderStreamer; // null: every collider is built up front
+    private VocabBlockSystem vocabBlocks;
+    private WaterSystem waterSystem;
+    private PlayerController playerController;
+    private BuoyancySystem buoyancySystem;
+    private final Vector2 spawnM = new Vector2();
+
+    private FrameProfiler profiler = FrameProfiler.DISABLED;
+    private long seenCells, seenRebuilds, seenMaskNanos; // water totals already reported
+
+    private final StringBuilder labelChars = new StringBuilder();
+    private int glyphsEnsured;
+    private boolean ready;
+
+    private LevelSession(String mapPath, long seed) {
+        this.mapPath = mapPath;
+        this.seed = seed;
+    }
+
+    /** prepare() with a fresh seed. */
+    public static LevelSession prepare(String mapPath) {
+        return prepare(mapPath, new Random().nextLong());
+    }
+
+    /** The CPU half of loading; safe on any thread. Finish with finishStep() on the render thread. */
+    public static LevelSession prepare(String mapPath, long seed) {
+        return prepare(mapPath, seed, true);
+    }
+
+    /** prepare(), without tileset images if graphics is false: the map then has no textures to draw. */
+    public static LevelSession prepare(String mapPath, long seed, boolean graphics) {
+        LevelSession s = new LevelSession(mapPath, seed);
+        // compiled level (./gradlew :tools:compileLevels) when present, TMX otherwise
+        FileHandle compiledFile = Gdx.files.internal(CompiledLevel.compiledPath(mapPath));
+        s.compiled = compiledFile.exists()
+                ? CompiledLevel.read(compiledFile, graphics)
+                : CompiledLevel.readTmx(Gdx.files.internal(mapPath), graphics);
+        s.build(s.compiled.map, new Level(s.compiled.map, s.compiled.walls));
+        return s;
+    }
+
+    /** prepare() and every finishStep() in one go, for when nothing was preloaded. Render thread only. */
+    public static LevelSession load(String mapPath, GlyphCache glyphs) {
+        return load(mapPath, new Random().nextLong(), glyphs);
+    }
+
+    public static LevelSession load(String mapPath, long seed, GlyphCache glyphs) {
+        LevelSession s = prepare(mapPath, seed);
+        while (!s.finishStep(glyphs)) { }
+        return s;
+    }
+
+    /** A finished session that makes no GL calls: no textures, no glyphs. It can step but not be drawn. */
+    public static LevelSession loadHeadless(String mapPath, long seed) {
+        LevelSession s = prepare(mapPath, seed, false);
+        while (!s.finishStep(null)) { }
+        return s;
+    }
+
+    /**
+     * One slice of GL work. Render thread only. Returns true once the level can be shown.
+     * glyphs may be null when nothing will draw text (headless replays).
+     */
+    public boolean finishStep(GlyphCache glyphs) {
+        if (ready) return true;
+
+        if (compiled != null) {
+            if (compiled.uploadNextTexture()) compiled = null;
+            return false;
+        }
+        // only the characters on this level's blocks; a warm cache usually has them all already
+        if (glyphs == null) {
+            ready = true;
+            return true;
+        }
+        if (glyphsEnsured < labelChars.length()) {
+            int end = Math.min(labelChars.length(), glyphsEnsured + GLYPHS_PER_STEP);
+            glyphs.ensure(labelChars.subSequence(glyphsEnsured, end));
+            glyphsEnsured = end;
+            return false;
+        }
+        // a warm font missing characters is rasterised again in the background; wait for its pages
+        if (!glyphs.update()) return false;
+        ready = true; // new glyphs are saved by the game between levels, not in this slice
+        return true;
+    }
+
+    public boolean isReady() { return ready; }
+
+    /** One fixed simulation step. */
+    public void step(float dt) {
+        profiler.begin(FrameProfiler.Stage.PLAYER);
+        playerController.update(dt);
+        profiler.end(FrameProfiler.Stage.PLAYER);
+
+        profiler.begin(FrameProfiler.Stage.WATER);
+        waterSystem.update(dt);
+        profiler.end(FrameProfiler.Stage.WATER);
+
+        profiler.begin(FrameProfiler.Stage.BUOYANCY);
+        buoyancySystem.apply(playerController.getPlayer(), waterSystem, dt);
+        profiler.end(FrameProfiler.Stage.BUOYANCY);
+
+        if (colliderStreamer != null) {
+            profiler.begin(FrameProfiler.Stage.COLLIDERS);
+            colliderStreamer.update();
+            profiler.end(FrameProfiler.Stage.COLLIDERS);
+        }
+
+        profiler.begin(FrameProfiler.Stage.PHYSICS);
+        world.step(dt, 6, 2);
+        profiler.end(FrameProfiler.Stage.PHYSICS);
+    }
+
+    /** Times step()'s stages into profiler from now on. */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Adds what the water and physics counted since the last call (mask rebuilds and their time,
+     * cells stepped) plus the current body and water quad counts to the profiler's frame.
+     * Call once per frame, before FrameProfiler.endFrame().
+     */
+    public void reportCounters() {
+        long cells = waterSystem.getCellsStepped();
+        long rebuilds = waterSystem.getMaskRebuilds();
+        long maskNanos = waterSystem.getMaskNanos();
+        profiler.count(FrameProfiler.Counter.CELLS_STEPPED, cells - seenCells);
+        profiler.count(FrameProfiler.Counter.MASK_REBUILDS, rebuilds - seenRebuilds);
+        profiler.add(FrameProfiler.Stage.MASKS, maskNanos - seenMaskNanos);
+        seenCells = cells;
+        seenRebuilds = rebuilds;
+        seenMaskNanos = maskNanos;
+
+        profiler.set(FrameProfiler.Counter.WATER_QUADS, waterSystem.getBodyQuadCount());
+        profiler.set(FrameProfiler.Counter.BODIES, world.getBodyCount());
+    }
+
+    /** Breaks wall tile (tx, ty) as a click on it does. False if there is no wall there. */
+    public boolean breakWall(int tx, int ty) {
+        if (!level.isWall(tx, ty)) return false;
+
+        level.removeWall(tx, ty);
+        wallPhysics.destroyWall(tx, ty);
+        waterSystem.onTilesOpened(tx, ty, tx, ty);
+        return true;
+    }
+
+    /** A click on vocab block index; broken blocks update the water through the break listener. */
+    public boolean clickBlock(int index) {
+        return vocabBlocks.handleClick(index);
+    }
+
+    public String getMapPath() { return mapPath; }
+    public long getSeed() { return seed; }
+    public TiledMap getMap() { return map; }
+    public Level getLevel() { return level; }
+    public World getWorld() { return world; }
+    public WallPhysics getWallPhysics() { return wallPhysics; }
+    public ColliderStreamer getColliderStreamer() { return colliderStreamer; }
+    public VocabBlockSystem getVocabBlocks() { return vocabBlocks; }
+    public WaterSystem getWaterSystem() { return waterSystem; }
+    public PlayerController getPlayerController() { return playerController; }
+    public BuoyancySystem getBuoyancySystem() { return buoyancySystem; }
+    public Vector2 getSpawnM() { return spawnM; }
+
+    private void build(TiledMap map, Level level) {
+        this.map = map;
+        this.level = level;
+
+        world = new World(new Vector2(0, -18f), true);
+
+        // big maps: only build colliders around dynamic bodies
+        wallPhysics = new WallPhysics(world, PPM);
+        boolean streamColliders = level.mapW() * level.mapH() >= STREAM_COLLIDERS_MIN_TILES;
+        if (streamColliders) colliderStreamer = new ColliderStreamer(world, PPM, level, wallPhysics);
+        else wallPhysics.buildAll(level);
+        vocabBlocks = new VocabBlockSystem(level, world, PPM);
+        vocabBlocks.setLazyBodies(streamColliders);
+        vocabBlocks.setSeed(seed);
+
+        // compiled dictionary (./gradlew :tools:compileVocab); the builtin pairs keep a bare checkout playable
+        FileHandle dictFile = Gdx.files.internal(VOCAB_DICT_PATH);
+        if (dictFile.exists()) {
+            vocabBlocks.loadAndRandomize(VocabDictionary.open(dictFile), VOCAB_TAG);
+        } else {
+            vocabBlocks.loadAndRandomize(builtinVocab(), 4);
+        }
+        if (colliderStreamer != null) colliderStreamer.attachVocab(vocabBlocks);
+        for (VocabBlockSystem.VocabBlock b : vocabBlocks.getBlocks()) labelChars.append(b.text);
+
+        // objects
+        Vector2 spawnPx = level.getObjectCenterPx(Level.OBJ_PLAYER_SPAWN);
+        Vector2 inletPx = level.getObjectCenterPx(Level.OBJ_INLET);
+        Vector2 outletPx = level.getObjectCenterPx(Level.OBJ_OUTLET);
+
+        int inletTx = level.pxToTileX(inletPx.x);
+        int inletTy = level.pxToTileY(inletPx.y);
+        int outletTx = level.pxToTileX(outletPx.x);
+        int outletTy = level.pxToTileY(outletPx.y);
+
+        // fixed-point levels: half the memory, and desktop and Android flood a level identically
+        waterSystem = new WaterSystem(level, inletTx, inletTy, outletTx, outletTy,
+                (tx, ty) -> level.isWall(tx, ty) || vocabBlocks.isSolidTile(tx, ty),
+                WaterSystem.Storage.FIXED16
+        );
+        vocabBlocks.setBreakListener((block, tx0, ty0, tx1, ty1) ->
+                waterSystem.onTilesOpened(tx0, ty0, tx1, ty1));
+
+        // big maps: spread the water solver over the cores on desktop, Android stays sequential
+        if (Gdx.app.getType() == Application.ApplicationType.Desktop
+                && level.mapW() * level.mapH() >= PARALLEL_WATER_MIN_TILES) {
+            waterSystem.setSolverThreads(Runtime.getRuntime().availableProcessors());
+        }
+
+        playerController = new PlayerController();
+        buoyancySystem = new BuoyancySystem(level, PPM);
+
+        spawnM.set(spawnPx.x / PPM, spawnPx.y / PPM);
+        playerController.createPlayer(world, spawnM.x, spawnM.y);
+        if (colliderStreamer != null) colliderStreamer.update();
+    }
+
+    private static List<VocabBlockSystem.VocabPair> builtinVocab() {
+        List<VocabBlockSystem.VocabPair> pool = new ArrayList<VocabBlockSystem.VocabPair>();
+        pool.add(new VocabBlockSystem.VocabPair("狗", "dog"));
+        pool.add(new VocabBlockSystem.VocabPair("猫", "cat"));
+        pool.add(new VocabBlockSystem.VocabPair("水", "water"));
+        pool.add(new VocabBlockSystem.VocabPair("火", "fire"));
+        pool.add(new VocabBlockSystem.VocabPair("人", "person"));
+        pool.add(new VocabBlockSystem.VocabPair("山", "mountain"));
+        return pool;
+    }
+
+    @Override
+    public void dispose() {
+        if (compiled != null) compiled.disposePending();
+        if (waterSystem != null) waterSystem.dispose();
+        if (world != null) world.dispose();
+        if (map != null) map.dispose();
+    }
+}
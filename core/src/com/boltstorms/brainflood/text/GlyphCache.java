@@ -0,0 +1,513 @@
+package com.boltstorms.brainflood.text;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * A BitmapFont holding only the characters actually shown, backed by a baked cache in local storage.
+ *
+ * Cold start: FreeType rasterises the requested characters into a growable PixmapPacker page set
+ * (incremental mode, so characters seen later are added on demand), and save() writes the pages
+ * as PNGs plus a small glyph table. Warm start: if the cached table for this font and size covers
+ * every requested character, the font is rebuilt from the PNGs and FreeType is never loaded.
+ * A character missing from a warm font switches back to FreeType once, for the grown set.
+ *
+ * With an executor (setExecutor) neither slow part runs on the render thread: save() copies the
+ * pages that gained glyphs and encodes them there, and the switch back to FreeType rasterises the
+ * whole set there while the warm font stays in use; update() then uploads one page per call and
+ * swaps the fonts.
+ */
+public class GlyphCache implements Disposable {
+
+    /** Always available: digits, latin letters and punctuation for the english side. */
+    public static final String BASE_CHARS = FreeTypeFontGenerator.DEFAULT_CHARS;
+
+    private static final int MAGIC = 0x42464743; // "BFGC"
+    private static final int VERSION = 1;
+    private static final int PAGE_SIZE = 512;
+    private static final String CACHE_DIR = "fontcache/";
+
+    private final FileHandle fontFile;
+    private final int size;
+    private final String cacheName;
+
+    private final BitSet known = new BitSet();   // characters the current font has
+    private final StringBuilder charset = new StringBuilder();
+
+    private BitmapFont font;
+    private FreeTypeFontGenerator generator;   // null while running from the baked cache
+    private PixmapPacker packer;
+    private Array<Texture> cachedPages;        // textures owned when loaded from the cache
+    private boolean dirty;                     // font has characters the cache does not
+    private int savedChars;                    // prefix of charset whose glyphs are in the saved pages
+
+    private AsyncExecutor executor;                 // page writes and rasterising, null = inline
+    private AsyncResult<Regenerated> regenerating;  // FreeType font being rasterised on the executor
+    private Regenerated regenerated;                // rasterised, pages being uploaded by update()
+    private volatile boolean writeFailed;           // a background save failed; rewrite every page
+
+    public GlyphCache(FileHandle fontFile, int size) {
+        this.fontFile = fontFile;
+        this.size = size;
+        this.cacheName = CACHE_DIR + fontFile.nameWithoutExtension() + "_" + size;
+    }
+
+    /** The font, grown to cover every character of text. Do not keep it across calls that add characters. */
+    public BitmapFont getFont(CharSequence text) {
+        ensure(text);
+        return font;
+    }
+
+    /** The current font (null before the first ensure). A later ensure or update may replace and dispose it. */
+    public BitmapFont getFont() {
+        return font;
+    }
+
+    /** Thread for save() and for regenerating a warm font (the level preloader's), or null to do both inline. */
+    public void setExecutor(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Makes sure every character of text has a glyph. Returns true if the BitmapFont instance changed
+     * (first call, or a warm font had to be regenerated), so callers holding font caches can rebuild them.
+     * With an executor a warm font is regenerated in the background instead: the new characters only
+     * have glyphs once update() returns true.
+     */
+    public boolean ensure(CharSequence text) {
+        int added = addChars(BASE_CHARS) + addChars(text);
+
+        if (font == null) {
+            if (!loadCached()) generate();
+            return true;
+        }
+        if (added == 0) return false;
+
+        dirty = true;
+        if (generator == null) {
+            // warm font cannot grow: regenerate once for the full set
+            if (executor != null) {
+                // characters added while this runs are rasterised after the switch, in update()
+                if (regenerating == null && regenerated == null) regenerate();
+                return false;
+            }
+            disposeFont();
+            generate();
+            return true;
+        }
+
+        // incremental FreeType font: looking a glyph up rasterises and packs it
+        BitmapFont.BitmapFontData data = font.getData();
+        for (int i = charset.length() - added; i < charset.length(); i++) data.getGlyph(charset.charAt(i));
+        return false;
+    }
+
+    /**
+     * Advances a background regeneration started by ensure(): collects the rasterised font, uploads one
+     * of its pages per call and finally replaces the warm font with it. Render thread. Returns true once
+     * nothing is pending.
+     */
+    public boolean update() {
+        if (regenerating != null) {
+            if (!regenerating.isDone()) return false;
+            AsyncResult<Regenerated> result = regenerating;
+            regenerating = null;
+            try {
+                regenerated = result.get();
+            } catch (GdxRuntimeException e) {
+                Gdx.app.error("FONT", "Background rasterising failed, regenerating inline", e);
+                disposeFont();
+                generate();
+                return true;
+            }
+        }
+        if (regenerated == null) return true;
+
+        Regenerated r = regenerated;
+        Array<PixmapPacker.Page> pages = r.packer.getPages();
+        for (int i = 0; i < pages.size; i++) {
+            if (pages.get(i).getTexture() != null) continue;
+            pages.get(i).updateTexture(r.parameter.minFilter, r.parameter.magFilter, r.parameter.genMipMaps);
+            return false;
+        }
+
+        // what generateFont() does after rasterising, now that every page has its texture
+        r.data.regions = new Array<>();
+        r.packer.updateTextureRegions(r.data.regions, r.parameter.minFilter, r.parameter.magFilter, r.parameter.genMipMaps);
+        disposeFont();
+        regenerated = null;
+        generator = r.generator;
+        packer = r.packer;
+        font = new BitmapFont(r.data, r.data.regions, true);
+        font.setOwnsTexture(false);
+        savedChars = 0;
+
+        BitmapFont.BitmapFontData data = font.getData();
+        for (int i = r.chars; i < charset.length(); i++) data.getGlyph(charset.charAt(i));
+        Gdx.app.log("FONT", "Rasterised " + r.chars + " glyphs with FreeType in the background");
+        return true;
+    }
+
+    /**
+     * Writes the pages that gained glyphs and the glyph table to local storage if they changed since
+     * the last save. The pages are copied here; encoding and writing happen on the executor if set.
+     */
+    public void save() {
+        if (!dirty || packer == null || !Gdx.files.isLocalStorageAvailable()) return;
+        if (writeFailed) {
+            writeFailed = false;
+            savedChars = 0;
+        }
+
+        final FileHandle table = Gdx.files.local(cacheName + ".glyphs");
+        Array<PixmapPacker.Page> pages = packer.getPages();
+        final byte[] tableBytes;
+        try {
+            tableBytes = tableBytes(pages.size);
+        } catch (IOException e) {
+            Gdx.app.error("FONT", "Could not write glyph cache " + table.path(), e);
+            return;
+        }
+
+        // glyphs never move once packed, so only pages holding new ones need writing again
+        BitSet changedPages = new BitSet();
+        BitmapFont.BitmapFontData data = font.getData();
+        for (int i = savedChars; i < charset.length(); i++) {
+            BitmapFont.Glyph g = data.getGlyph(charset.charAt(i));
+            if (g != null) changedPages.set(g.page);
+        }
+        final Pixmap[] copies = new Pixmap[pages.size];
+        for (int i = changedPages.nextSetBit(0); i >= 0 && i < pages.size; i = changedPages.nextSetBit(i + 1)) {
+            copies[i] = copy(pages.get(i).getPixmap());
+        }
+        savedChars = charset.length();
+        dirty = false;
+
+        if (executor == null) {
+            write(table, copies, tableBytes);
+        } else {
+            executor.submit(() -> {
+                write(table, copies, tableBytes);
+                return null;
+            });
+        }
+    }
+
+    /** Any thread. Disposes the page copies. */
+    private void write(FileHandle table, Pixmap[] pages, byte[] tableBytes) {
+        try {
+            table.delete();
+            for (int i = 0; i < pages.length; i++) {
+                if (pages[i] != null) PixmapIO.writePNG(pageFile(i), pages[i]);
+            }
+            table.writeBytes(tableBytes, false);
+        } catch (Exception e) {
+            Gdx.app.error("FONT", "Could not write glyph cache " + table.path(), e);
+            table.delete();
+            writeFailed = true;
+        } finally {
+            for (Pixmap p : pages) {
+                if (p != null) p.dispose();
+            }
+        }
+    }
+
+    private static Pixmap copy(Pixmap page) {
+        Pixmap copy = new Pixmap(page.getWidth(), page.getHeight(), page.getFormat());
+        copy.setBlending(Pixmap.Blending.None);
+        copy.drawPixmap(page, 0, 0);
+        return copy;
+    }
+
+    public boolean isUsingFreeType() {
+        return generator != null;
+    }
+
+    @Override
+    public void dispose() {
+        discardRegeneration();
+        save();
+        disposeFont();
+    }
+
+    // ----------------- internals -----------------
+
+    private int addChars(CharSequence text) {
+        int added = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < ' ' || known.get(c)) continue;
+            known.set(c);
+            charset.append(c);
+            added++;
+        }
+        return added;
+    }
+
+    private void generate() {
+        generator = new FreeTypeFontGenerator(fontFile);
+        packer = newPacker();
+        font = generator.generateFont(parameter(packer, charset.toString()));
+        dirty = true;
+        savedChars = 0;
+
+        Gdx.app.log("FONT", "Rasterised " + charset.length() + " glyphs with FreeType");
+    }
+
+    /** generate() on the executor, minus the GL half: update() uploads the pages and builds the font. */
+    private void regenerate() {
+        final String chars = charset.toString();
+        regenerating = executor.submit(() -> {
+            Regenerated r = new Regenerated(new FreeTypeFontGenerator(fontFile), newPacker(), chars.length());
+            try {
+                r.parameter = parameter(r.packer, chars);
+                r.data = r.generator.generateData(r.parameter, new FreeTypeFontGenerator.FreeTypeBitmapFontData());
+                return r;
+            } catch (RuntimeException e) {
+                r.dispose();
+                throw e;
+            }
+        });
+    }
+
+    private void discardRegeneration() {
+        if (regenerating != null) {
+            try {
+                regenerated = regenerating.get();
+            } catch (GdxRuntimeException ignored) {
+                // nothing was kept
+            }
+            regenerating = null;
+        }
+        if (regenerated != null) regenerated.dispose();
+        regenerated = null;
+    }
+
+    private static PixmapPacker newPacker() {
+        return new PixmapPacker(PAGE_SIZE, PAGE_SIZE, Pixmap.Format.RGBA8888, 1, false);
+    }
+
+    private FreeTypeFontGenerator.FreeTypeFontParameter parameter(PixmapPacker packer, String chars) {
+        FreeTypeFontGenerator.FreeTypeFontParameter p = new FreeTypeFontGenerator.FreeTypeFontParameter();
+        p.size = size;
+        p.characters = chars;
+        p.incremental = true;
+        p.packer = packer;
+        return p;
+    }
+
+    /** The packer's pages and their textures; a font built on a packer does not own them. */
+    private static void disposePacker(PixmapPacker packer) {
+        Array<PixmapPacker.Page> pages = packer.getPages();
+        for (int i = 0; i < pages.size; i++) {
+            if (pages.get(i).getTexture() != null) pages.get(i).getTexture().dispose();
+        }
+        packer.dispose();
+    }
+
+    private void disposeFont() {
+        if (font != null) font.dispose();
+        font = null;
+        if (packer != null) disposePacker(packer);
+        packer = null;
+        if (generator != null) generator.dispose();
+        generator = null;
+        if (cachedPages != null) {
+            for (Texture t : cachedPages) t.dispose();
+            cachedPages = null;
+        }
+    }
+
+    private FileHandle pageFile(int page) {
+        return Gdx.files.local(cacheName + "_" + page + ".png");
+    }
+
+    // Table layout (big-endian): magic, version, size, metrics, charset, page count,
+    // then per glyph: id, page, src rect, offsets, advance, kerning pairs.
+
+    private byte[] tableBytes(int pageCount) throws IOException {
+        BitmapFont.BitmapFontData data = font.getData();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeFloat(data.lineHeight);
+            out.writeFloat(data.capHeight);
+            out.writeFloat(data.ascent);
+            out.writeFloat(data.descent);
+            out.writeFloat(data.down);
+            out.writeFloat(data.spaceXadvance);
+            out.writeFloat(data.xHeight);
+            out.writeFloat(data.padTop);
+            out.writeFloat(data.padRight);
+            out.writeFloat(data.padBottom);
+            out.writeFloat(data.padLeft);
+            out.writeUTF(charset.toString());
+            out.writeInt(pageCount);
+
+            int count = 0;
+            for (int i = 0; i < charset.length(); i++) {
+                if (data.getGlyph(charset.charAt(i)) != null) count++;
+            }
+            out.writeInt(count);
+            for (int i = 0; i < charset.length(); i++) {
+                BitmapFont.Glyph g = data.getGlyph(charset.charAt(i));
+                if (g == null) continue;
+                out.writeInt(g.id);
+                out.writeInt(g.page);
+                out.writeInt(g.srcX);
+                out.writeInt(g.srcY);
+                out.writeInt(g.width);
+                out.writeInt(g.height);
+                out.writeInt(g.xoffset);
+                out.writeInt(g.yoffset);
+                out.writeInt(g.xadvance);
+
+                // kerning is stored sparsely in 512-entry pages indexed by the following char
+                int pairs = 0;
+                if (g.kerning != null) {
+                    for (byte[] page : g.kerning) {
+                        if (page == null) continue;
+                        for (byte k : page) if (k != 0) pairs++;
+                    }
+                }
+                out.writeInt(pairs);
+                if (pairs == 0) continue;
+                for (int p = 0; p < g.kerning.length; p++) {
+                    byte[] page = g.kerning[p];
+                    if (page == null) continue;
+                    for (int j = 0; j < page.length; j++) {
+                        if (page[j] == 0) continue;
+                        out.writeChar((p << 9) | j);
+                        out.writeInt(page[j]);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Loads the baked font if the cache covers every known character. */
+    private boolean loadCached() {
+        if (!Gdx.files.isLocalStorageAvailable()) return false;
+        FileHandle table = Gdx.files.local(cacheName + ".glyphs");
+        if (!table.exists()) return false;
+
+        DataInputStream in = new DataInputStream(table.read());
+        Array<Texture> textures = new Array<>();
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != size) return false;
+
+            BitmapFont.BitmapFontData data = new BitmapFont.BitmapFontData();
+            data.lineHeight = in.readFloat();
+            data.capHeight = in.readFloat();
+            data.ascent = in.readFloat();
+            data.descent = in.readFloat();
+            data.down = in.readFloat();
+            data.spaceXadvance = in.readFloat();
+            data.xHeight = in.readFloat();
+            data.padTop = in.readFloat();
+            data.padRight = in.readFloat();
+            data.padBottom = in.readFloat();
+            data.padLeft = in.readFloat();
+
+            String cachedChars = in.readUTF();
+            BitSet cached = new BitSet();
+            for (int i = 0; i < cachedChars.length(); i++) cached.set(cachedChars.charAt(i));
+            BitSet missing = (BitSet) known.clone();
+            missing.andNot(cached);
+            if (!missing.isEmpty()) return false;
+
+            int pageCount = in.readInt();
+            Array<TextureRegion> regions = new Array<>(pageCount);
+            for (int i = 0; i < pageCount; i++) {
+                FileHandle png = pageFile(i);
+                if (!png.exists()) return false;
+                Texture t = new Texture(png);
+                textures.add(t);
+                regions.add(new TextureRegion(t));
+            }
+
+            int glyphCount = in.readInt();
+            for (int i = 0; i < glyphCount; i++) {
+                BitmapFont.Glyph g = new BitmapFont.Glyph();
+                g.id = in.readInt();
+                g.page = in.readInt();
+                g.srcX = in.readInt();
+                g.srcY = in.readInt();
+                g.width = in.readInt();
+                g.height = in.readInt();
+                g.xoffset = in.readInt();
+                g.yoffset = in.readInt();
+                g.xadvance = in.readInt();
+                for (int pairs = in.readInt(); pairs > 0; pairs--) {
+                    g.setKerning(in.readChar(), in.readInt());
+                }
+                data.setGlyph(g.id, g);
+            }
+
+            font = new BitmapFont(data, regions, true);
+            cachedPages = textures;
+            textures = null;
+
+            // the cache may hold more than was asked for; all of it is usable
+            charset.setLength(0);
+            charset.append(cachedChars);
+            known.or(cached);
+            dirty = false;
+
+            Gdx.app.log("FONT", "Loaded " + glyphCount + " baked glyphs from " + table.path());
+            return true;
+        } catch (Exception e) {
+            Gdx.app.error("FONT", "Ignoring unreadable glyph cache " + table.path(), e);
+            return false;
+        } finally {
+            try { in.close(); } catch (IOException ignored) {}
+            if (textures != null) {
+                for (Texture t : textures) t.dispose();
+            }
+        }
+    }
+
+    /** A FreeType font rasterised off the render thread, waiting for update() to upload its pages. */
+    private static class Regenerated {
+        final FreeTypeFontGenerator generator;
+        final PixmapPacker packer;
+        final int chars; // charset prefix it was rasterised for
+        FreeTypeFontGenerator.FreeTypeFontParameter parameter;
+        FreeTypeFontGenerator.FreeTypeBitmapFontData data;
+
+        Regenerated(FreeTypeFontGenerator generator, PixmapPacker packer, int chars) {
+            this.generator = generator;
+            this.packer = packer;
+            this.chars = chars;
+        }
+
+        void dispose() {
+            disposePacker(packer);
+            generator.dispose();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.boltstorms.brainflood.vocab;
+
+import com.badlogic.gdx.utils.IntIntMap;
+
+import java.util.Random;
+
+/** Random subsets without touching the whole population. */
+public final class Sampling {
+
+    private Sampling() {}
+
+    /**
+     * k distinct indices from [0, n) in random order, as the first k steps of a Fisher-Yates shuffle.
+     * Only the swapped slots are remembered (in a map), so time and memory are O(k), not O(n).
+     */
+    public static int[] sample(int n, int k, Random rng) {
+        if (k < 0 || k > n) throw new IllegalArgumentException("Cannot pick " + k + " of " + n);
+
+        int[] out = new int[k];
+        IntIntMap swapped = new IntIntMap(k * 2);
+        for (int i = 0; i < k; i++) {
+            int j = i + rng.nextInt(n - i);
+            int atJ = swapped.get(j, j);
+            int atI = swapped.get(i, i);
+            out[i] = atJ;
+            swapped.put(j, atI);
+        }
+        return out;
+    }
+}
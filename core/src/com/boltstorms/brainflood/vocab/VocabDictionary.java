@@ -0,0 +1,107 @@
+package com.boltstorms.brainflood.vocab;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.boltstorms.brainflood.level.VocabBlockSystem.VocabPair;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Read-only view of a compiled vocabulary file (see VocabDictionaryWriter for the layout).
+ * The file is memory mapped where the platform allows it; entries are only decoded when
+ * sampled, so opening a dictionary of any size costs a header read.
+ */
+public class VocabDictionary {
+
+    static final int MAGIC = 0x42465644; // "BFVD"
+    static final int VERSION = 1;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buf;
+    private final int entryCount, tagCount;
+    private final int entryTable, tagTable, tagLists;
+
+    public VocabDictionary(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.getInt(0) != MAGIC) throw new IllegalArgumentException("Not a vocab dictionary");
+        if (buf.getInt(4) != VERSION) throw new IllegalArgumentException("Unsupported vocab dictionary version " + buf.getInt(4));
+
+        this.entryCount = buf.getInt(8);
+        this.tagCount = buf.getInt(12);
+        this.entryTable = 16;
+        this.tagTable = entryTable + entryCount * 4;
+        this.tagLists = tagTable + tagCount * 12;
+    }
+
+    /** Maps the file if possible (compressed Android assets cannot be mapped and are read instead). */
+    public static VocabDictionary open(FileHandle file) {
+        ByteBuffer buf;
+        try {
+            buf = file.map();
+        } catch (RuntimeException e) {
+            Gdx.app.log("VOCAB", "Cannot map " + file.path() + ", reading it instead");
+            buf = ByteBuffer.wrap(file.readBytes());
+        }
+        return new VocabDictionary(buf);
+    }
+
+    public int size() { return entryCount; }
+
+    public int tagCount() { return tagCount; }
+
+    public String tagName(int tag) {
+        return readString(buf.getInt(tagTable + tag * 12));
+    }
+
+    /** Index of the tag, or -1. Linear in the (small) number of tags. */
+    public int findTag(String name) {
+        for (int t = 0; t < tagCount; t++) {
+            if (tagName(t).equals(name)) return t;
+        }
+        return -1;
+    }
+
+    /** Number of entries carrying the tag (0 if unknown); null means the whole dictionary. */
+    public int tagSize(String tag) {
+        if (tag == null) return entryCount;
+        int t = findTag(tag);
+        return t < 0 ? 0 : buf.getInt(tagTable + t * 12 + 4);
+    }
+
+    public VocabPair get(int entry) {
+        int off = buf.getInt(entryTable + entry * 4);
+        String hanzi = readString(off);
+        String english = readString(off + 2 + (buf.getShort(off) & 0xFFFF));
+        return new VocabPair(hanzi, english);
+    }
+
+    /** k distinct random entries with the tag (null = any), decoding only those k. */
+    public List<VocabPair> sample(String tag, int k, Random rng) {
+        int n, list;
+        if (tag == null) {
+            n = entryCount;
+            list = -1;
+        } else {
+            int t = findTag(tag);
+            if (t < 0) throw new IllegalArgumentException("Unknown vocab tag: " + tag);
+            n = buf.getInt(tagTable + t * 12 + 4);
+            list = tagLists + buf.getInt(tagTable + t * 12 + 8) * 4;
+        }
+
+        int[] picks = Sampling.sample(n, k, rng);
+        List<VocabPair> out = new ArrayList<>(k);
+        for (int p : picks) out.add(get(list < 0 ? p : buf.getInt(list + p * 4)));
+        return out;
+    }
+
+    private String readString(int off) {
+        int len = buf.getShort(off) & 0xFFFF;
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) bytes[i] = buf.get(off + 2 + i);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,90 @@
+package com.boltstorms.brainflood.vocab;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the compiled vocabulary format read by VocabDictionary. Layout (big-endian):
+ *
+ *   int magic, int version, int entryCount, int tagCount
+ *   int[entryCount]        offset of each entry record in the file
+ *   tagCount x (int nameOffset, int count, int firstIndex)
+ *   int[sum of counts]     entry ids, grouped by tag
+ *   strings                entry = u16 len + UTF-8 hanzi, u16 len + UTF-8 english; tag = u16 len + UTF-8 name
+ */
+public class VocabDictionaryWriter {
+
+    private final List<String[]> entries = new ArrayList<>();
+    private final Map<String, List<Integer>> tags = new LinkedHashMap<>();
+
+    /** Adds an entry and returns its id. */
+    public int add(String hanzi, String english, String... entryTags) {
+        int id = entries.size();
+        entries.add(new String[]{hanzi, english});
+        for (String tag : entryTags) {
+            List<Integer> ids = tags.get(tag);
+            if (ids == null) tags.put(tag, ids = new ArrayList<>());
+            ids.add(id);
+        }
+        return id;
+    }
+
+    public int size() { return entries.size(); }
+
+    public void write(OutputStream target) throws IOException {
+        int tagCount = tags.size();
+        int listLength = 0;
+        for (List<Integer> ids : tags.values()) listLength += ids.size();
+
+        int stringsStart = 16 + entries.size() * 4 + tagCount * 12 + listLength * 4;
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream s = new DataOutputStream(strings);
+        int[] entryOffsets = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            entryOffsets[i] = stringsStart + s.size();
+            writeString(s, entries.get(i)[0]);
+            writeString(s, entries.get(i)[1]);
+        }
+        int[] tagOffsets = new int[tagCount];
+        int t = 0;
+        for (String tag : tags.keySet()) {
+            tagOffsets[t++] = stringsStart + s.size();
+            writeString(s, tag);
+        }
+
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeInt(VocabDictionary.MAGIC);
+        out.writeInt(VocabDictionary.VERSION);
+        out.writeInt(entries.size());
+        out.writeInt(tagCount);
+        for (int off : entryOffsets) out.writeInt(off);
+
+        t = 0;
+        int first = 0;
+        for (List<Integer> ids : tags.values()) {
+            out.writeInt(tagOffsets[t++]);
+            out.writeInt(ids.size());
+            out.writeInt(first);
+            first += ids.size();
+        }
+        for (List<Integer> ids : tags.values()) {
+            for (int id : ids) out.writeInt(id);
+        }
+        strings.writeTo(out);
+        out.flush();
+    }
+
+    private static void writeString(DataOutputStream s, String value) throws IOException {
+        byte[] bytes = value.getBytes(VocabDictionary.UTF8);
+        if (bytes.length > 0xFFFF) throw new IOException("String too long: " + value.substring(0, 32) + "...");
+        s.writeShort(bytes.length);
+        s.write(bytes);
+    }
+}
@@ -0,0 +1,136 @@
+package com.boltstorms.brainflood.water;
+
+import com.boltstorms.brainflood.level.BitGrid;
+
+import java.util.Arrays;
+
+/**
+ * A BitGrid that remembers which WaterSystem chunks it has bits in, so passes over it
+ * visit only those chunks instead of every word of the map, and clearing it costs the
+ * marked chunks only. Marks are plain booleans: the parallel solver may set the same one
+ * from two threads, which is harmless because both write true.
+ */
+final class ChunkBits {
+
+    private static final int SHIFT = WaterSystem.CHUNK_SHIFT;
+    private static final int MASK = WaterSystem.CHUNK - 1;
+    private static final long CHUNK_BITS = WaterSystem.CHUNK == 64 ? -1L : (1L << WaterSystem.CHUNK) - 1;
+
+    final BitGrid grid;
+    private final int width, height, chunksX, chunksY;
+    private final boolean[] marked;     // per chunk: may have bits
+    private final boolean[] rowMarked;  // per chunk row: some chunk in it is marked
+
+    // marked chunks in row-major chunk order, as of the last index()
+    private int[] list;
+    private final int[] rowStart;
+
+    ChunkBits(int width, int height) {
+        this.grid = new BitGrid(width, height);
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + MASK) >> SHIFT;
+        this.chunksY = (height + MASK) >> SHIFT;
+        this.marked = new boolean[chunksX * chunksY];
+        this.rowMarked = new boolean[chunksY];
+        this.list = new int[16];
+        this.rowStart = new int[chunksY + 1];
+    }
+
+    boolean get(int x, int y) {
+        return grid.get(x, y);
+    }
+
+    void set(int x, int y) {
+        grid.set(x, y);
+        mark(x >> SHIFT, y >> SHIFT);
+    }
+
+    /** Sets the tile and its 4 neighbours (clipped to the grid). */
+    void setWithNeighbours(int x, int y) {
+        grid.setWithNeighbours(x, y);
+        int cx = x >> SHIFT, cy = y >> SHIFT;
+        mark(cx, cy);
+        if ((x & MASK) == 0 && x > 0) mark(cx - 1, cy);
+        if ((x & MASK) == MASK && x < width - 1) mark(cx + 1, cy);
+        if ((y & MASK) == 0 && y > 0) mark(cx, cy - 1);
+        if ((y & MASK) == MASK && y < height - 1) mark(cx, cy + 1);
+    }
+
+    private void mark(int cx, int cy) {
+        marked[cy * chunksX + cx] = true;
+        rowMarked[cy] = true;
+    }
+
+    /** Same as BitGrid.rowHasBits, but rows in unmarked chunk rows are answered without a scan. */
+    boolean rowHasBits(int y) {
+        return rowMarked[y >> SHIFT] && grid.rowHasBits(y);
+    }
+
+    /** Lists the marked chunks for chunk(), rowFirst() and rowEnd(). Returns how many there are. */
+    int index() {
+        int n = 0;
+        for (int cy = 0; cy < chunksY; cy++) {
+            rowStart[cy] = n;
+            if (!rowMarked[cy]) continue;
+            for (int c = cy * chunksX, end = c + chunksX; c < end; c++) {
+                if (!marked[c]) continue;
+                if (n == list.length) list = Arrays.copyOf(list, n * 2);
+                list[n++] = c;
+            }
+        }
+        rowStart[chunksY] = n;
+        return n;
+    }
+
+    /** k-th marked chunk (chunkY * chunksX + chunkX) of the last index(). */
+    int chunk(int k) {
+        return list[k];
+    }
+
+    /** First index() entry in chunk row cy. */
+    int rowFirst(int cy) {
+        return rowStart[cy];
+    }
+
+    /** One past the last index() entry in chunk row cy. */
+    int rowEnd(int cy) {
+        return rowStart[cy + 1];
+    }
+
+    /** Set bits in the chunks listed by the last index(). */
+    long countIndexed(int count) {
+        long n = 0;
+        for (int k = 0; k < count; k++) {
+            int c = list[k], cx = c % chunksX, y0 = (c / chunksX) << SHIFT;
+            for (int y = y0, y1 = Math.min(height, y0 + WaterSystem.CHUNK); y < y1; y++) {
+                n += Long.bitCount(rowBits(cx, y));
+            }
+        }
+        return n;
+    }
+
+    /** The bits of row y inside chunk column cx; bit 0 is tile cx * CHUNK. */
+    long rowBits(int cx, int y) {
+        int x0 = cx << SHIFT;
+        return (grid.words[y * grid.wordsPerRow + (x0 >>> 6)] >>> (x0 & 63)) & CHUNK_BITS;
+    }
+
+    /** Clears every bit, touching only the marked chunks. */
+    void clearAll() {
+        long[] words = grid.words;
+        int wpr = grid.wordsPerRow;
+        for (int cy = 0; cy < chunksY; cy++) {
+            if (!rowMarked[cy]) continue;
+            rowMarked[cy] = false;
+            int y0 = cy << SHIFT, y1 = Math.min(height, y0 + WaterSystem.CHUNK);
+            for (int c = cy * chunksX, cx = 0; cx < chunksX; c++, cx++) {
+                if (!marked[c]) continue;
+                marked[c] = false;
+                int x0 = cx << SHIFT;
+                long keep = ~(CHUNK_BITS << (x0 & 63));
+                for (int y = y0, k = y0 * wpr + (x0 >>> 6); y < y1; y++, k += wpr) words[k] &= keep;
+            }
+        }
+    }
+}
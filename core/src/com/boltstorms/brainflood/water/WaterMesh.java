@@ -0,0 +1,193 @@
+package com.boltstorms.brainflood.water;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.util.Arrays;
+
+/**
+ * Geometry of the water body. Each row is merged into horizontal runs of tiles with the
+ * same fill height (rounded to whole pixels). Only rows handed to buildRow() are re-merged.
+ * The rows of the range being drawn are packed into one Mesh. Once per frame, rebuilt rows that
+ * kept their vertex count are written over their old slot (updateVertices); the buffer is
+ * repacked from the first rebuilt row that grew or shrank, and entirely when the range moved.
+ */
+class WaterMesh implements Disposable {
+
+    private static final int FLOATS_PER_QUAD = 12; // 2 triangles x 3 vertices x (x, y)
+
+    private static final String VERT =
+            "attribute vec4 " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+            "uniform mat4 u_projTrans;\n" +
+            "void main() {\n" +
+            "  gl_Position = u_projTrans * " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+            "}\n";
+
+    private static final String FRAG =
+            "#ifdef GL_ES\n" +
+            "precision mediump float;\n" +
+            "#endif\n" +
+            "uniform vec4 u_color;\n" +
+            "void main() {\n" +
+            "  gl_FragColor = u_color;\n" +
+            "}\n";
+
+    private final int tileW, tileH;
+
+    private final FloatArray[] rows;   // merged quads per row
+    private final int[] rowStart;      // first vertex of each row in the uploaded buffer (uploaded rows only)
+    private final boolean[] rowDirty;  // uploaded rows rebuilt since they were packed
+    private boolean dirty = false;
+    private int uploadedY0, uploadedY1; // rows [y0, y1) currently in the mesh
+
+    private float[] packed = new float[0];
+    private int vertexCount = 0;
+
+    private Mesh mesh;
+    private ShaderProgram shader;
+
+    WaterMesh(int mapH, int tileW, int tileH) {
+        this.tileW = tileW;
+        this.tileH = tileH;
+        this.rows = new FloatArray[mapH];
+        this.rowStart = new int[mapH + 1];
+        this.rowDirty = new boolean[mapH];
+        for (int y = 0; y < mapH; y++) rows[y] = new FloatArray(false, 0);
+    }
+
+    /** Quads currently in the mesh. */
+    int quadCount() {
+        return vertexCount / 6;
+    }
+
+    /** Re-merges columns [x0, x1) of row y from its water levels (0..1 per tile, indexed by x). */
+    void buildRow(int y, float[] levels, int x0, int x1) {
+        FloatArray out = rows[y];
+        out.clear();
+
+        float bottom = y * tileH;
+
+        int runStart = -1;
+        int runH = 0;
+        for (int x = x0; x <= x1; x++) {
+            int h = 0;
+            if (x < x1) {
+                float w = levels[x];
+                if (w > 0f) h = Math.min(tileH, Math.round(w * tileH));
+            }
+
+            if (h == runH) continue;
+
+            if (runH > 0) addQuad(out, runStart * tileW, bottom, x * tileW, bottom + runH);
+            runStart = x;
+            runH = h;
+        }
+
+        if (y >= uploadedY0 && y < uploadedY1) {
+            rowDirty[y] = true;
+            dirty = true;
+        }
+    }
+
+    private static void addQuad(FloatArray out, float x0, float y0, float x1, float y1) {
+        float[] v = out.ensureCapacity(FLOATS_PER_QUAD);
+        int n = out.size;
+        v[n] = x0;      v[n + 1] = y0;
+        v[n + 2] = x1;  v[n + 3] = y0;
+        v[n + 4] = x1;  v[n + 5] = y1;
+        v[n + 6] = x1;  v[n + 7] = y1;
+        v[n + 8] = x0;  v[n + 9] = y1;
+        v[n + 10] = x0; v[n + 11] = y0;
+        out.size = n + FLOATS_PER_QUAD;
+    }
+
+    /** Draws rows [y0, y1). */
+    void render(Matrix4 projection, int y0, int y1, float r, float g, float b, float a) {
+        if (mesh == null || y0 != uploadedY0 || y1 != uploadedY1) upload(y0, y1);
+        else if (dirty) patch();
+        if (vertexCount == 0) return;
+
+        shader.bind();
+        shader.setUniformMatrix("u_projTrans", projection);
+        shader.setUniformf("u_color", r, g, b, a);
+        mesh.render(shader, GL20.GL_TRIANGLES, 0, vertexCount);
+    }
+
+    private void upload(int y0, int y1) {
+        Arrays.fill(rowDirty, uploadedY0, uploadedY1, false);
+        dirty = false;
+        uploadedY0 = y0;
+        uploadedY1 = y1;
+
+        rowStart[y0] = 0;
+        send(pack(y0));
+    }
+
+    /** Rewrites the rebuilt rows in place, up to the first one whose vertex count changed. */
+    private void patch() {
+        dirty = false;
+        int y = uploadedY0;
+        for (; y < uploadedY1; y++) {
+            if (!rowDirty[y]) continue;
+            int off = rowStart[y] * 2, size = rows[y].size;
+            if (size != (rowStart[y + 1] - rowStart[y]) * 2) break;
+
+            rowDirty[y] = false;
+            System.arraycopy(rows[y].items, 0, packed, off, size);
+            mesh.updateVertices(off, packed, off, size);
+        }
+        // everything behind a row that grew or shrank moves
+        if (y < uploadedY1) send(pack(y));
+    }
+
+    /** Packs rows [from, uploadedY1) behind the rows before them; returns the floats in use. */
+    private int pack(int from) {
+        int floats = rowStart[from] * 2;
+        int start = floats;
+        for (int y = from; y < uploadedY1; y++) {
+            rowStart[y] = floats / 2;
+            floats += rows[y].size;
+            rowDirty[y] = false;
+        }
+        rowStart[uploadedY1] = floats / 2;
+        vertexCount = floats / 2;
+
+        if (packed.length < floats) packed = Arrays.copyOf(packed, Math.max(floats, packed.length * 2));
+        for (int y = from, off = start; y < uploadedY1; y++) {
+            System.arraycopy(rows[y].items, 0, packed, off, rows[y].size);
+            off += rows[y].size;
+        }
+        return floats;
+    }
+
+    private void send(int floats) {
+        if (shader == null) {
+            shader = new ShaderProgram(VERT, FRAG);
+            if (!shader.isCompiled()) throw new GdxRuntimeException("Water shader: " + shader.getLog());
+        }
+        if (mesh == null || mesh.getMaxVertices() < vertexCount) {
+            if (mesh != null) mesh.dispose();
+            int capacity = Math.max(1024, packed.length / 2);
+            mesh = new Mesh(false, capacity, 0,
+                    new VertexAttribute(VertexAttributes.Usage.Position, 2, ShaderProgram.POSITION_ATTRIBUTE));
+            Gdx.app.log("WATER", "Water mesh capacity " + capacity + " vertices");
+        }
+        mesh.setVertices(packed, 0, floats);
+    }
+
+    @Override
+    public void dispose() {
+        if (mesh != null) mesh.dispose();
+        if (shader != null) shader.dispose();
+        mesh = null;
+        shader = null;
+    }
+}
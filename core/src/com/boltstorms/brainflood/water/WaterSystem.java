@@ -3,9 +3,12 @@ package com.boltstorms.brainflood.water;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
-import com.boltstorms.brainflood.level.Level;
+import com.boltstorms.brainflood.level.BitGrid;
+import com.boltstorms.brainflood.level.TileGrid;
 
-import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class WaterSystem {
 
@@ -13,18 +16,96 @@ public class WaterSystem {
         boolean isSolid(int tx, int ty);
     }
 
-    private final Level level;
+    /**
+     * How water levels are stored. FLOAT keeps the original float arithmetic. FIXED16 stores a level
+     * as an unsigned 16-bit count of 1/UNIT tiles and moves water in whole units, which halves the
+     * storage, conserves volume exactly and gives bit-identical results on every JVM.
+     */
+    public enum Storage { FLOAT, FIXED16 }
+
+    /** One full tile of water in FIXED16 storage. */
+    public static final int UNIT = 1 << 15;
+    private static final float TO_LEVEL = 1f / UNIT;
+    private static final char FLUX_MAX = Character.MAX_VALUE; // FIXED16 downFlux saturates here
+
+    private final TileGrid grid;
     private final SolidQuery solidQuery;
 
     private final int mapW, mapH, tileW, tileH;
 
-    // water state
-    private final float[][] water;      // [y][x] 0..1
-    private final float[][] downFlux;   // [y][x] amount moved down this frame (visual)
-
-    // masks
-    private boolean[][] reachable;
-    private boolean[][] outside;
+    // per-cell flags, packed into one byte per tile (refreshed in onLevelChanged)
+    private static final byte SOLID = 1;
+    private static final byte REACHABLE = 2;
+    private static final byte OUTSIDE = 4;
+    private static final byte LEAK_EDGE = 8;  // can hold water and touches an open outside tile
+    private static final byte HOLDS = 16;     // open, reachable and not outside
+
+    // Cell state is stored in CHUNK x CHUNK chunks (chunk = chunkY * chunksX + chunkX,
+    // cell = localY * CHUNK + localX). A chunk's level arrays exist only while one of its cells
+    // can hold water, everything else reads as dry; a chunk whose cells all have the same flags
+    // (solid rock, outside air) keeps them as one byte. Memory then follows the basin, not the map.
+    public static final int CHUNK_SHIFT = 5;
+    public static final int CHUNK = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK - 1;
+    private static final int CHUNK_CELLS = CHUNK * CHUNK;
+    private final int chunksX, chunksY;
+
+    private final boolean fixed;        // FIXED16: the char arrays are used, the float ones are null
+    private final float[][] water;      // 0..1
+    private final float[][] downFlux;   // amount moved down this frame (visual)
+    private final char[][] waterQ;      // FIXED16 counterparts, in 1/UNIT tiles
+    private final char[][] downFluxQ;
+    private final char[][] prevWaterQ;
+    private final byte[][] flags;       // null: every cell of the chunk has flagFill[chunk]
+    private final byte[] flagFill;
+    private int waterChunks;
+
+    // state at the start of the last update, for render interpolation
+    private final float[][] prevWater;
+    private final ChunkBits changed;    // cells whose water changed since prevWater was taken
+
+    // surface heightmap, column-major: row tx of this grid holds one bit per ty that is the top
+    // of a wet stack. Kept up to date from the changed cells after every update.
+    private final BitGrid columnSurfaces;
+    private final int[] surfaceCount;   // set bits per column of columnSurfaces
+    private static final float WET = 0.01f;
+    private static final float SIDE_MIN_DIFF = 0.02f; // smaller level differences don't flow sideways
+
+    // FIXED16 volume bookkeeping: stored == added - removed, exactly
+    private long addedUnits, removedUnits;
+
+    // cached water body geometry (created on first render, needs GL)
+    private WaterMesh bodyMesh;
+    private final boolean[] meshRowStale; // rows changed by an update since they were last merged
+    private final float[] rowLevels;      // one row of interpolated levels handed to the mesh
+    private int meshX0, meshX1;           // chunk-aligned column window the mesh rows are built for
+
+    // active-cell tracking: only cells that (or whose neighbours) changed recently get stepped
+    private ChunkBits active;          // cells to step in the next sub-iteration
+    private ChunkBits nextActive;      // cells woken during the current sub-iteration
+    private final ChunkBits fluxCells; // cells with non-zero downFlux
+    private int[] leakCells = new int[0];
+    private int leakCount = 0;
+    private int[] floodQueue = new int[64];
+    private int[] openedCells = new int[16]; // tiles cleared by the current onTilesOpened
+
+    // falling runs found by the last update: (x, startY, endY) triples plus their peak downFlux
+    private int[] falls = new int[48];
+    private float[] fallPeak = new float[16];
+    private int fallCount = 0;
+
+    // scratch masks for full rebuilds, filled word-parallel and then folded into the chunk flags
+    private final BitGrid openMask;
+    private final BitGrid outsideMask;
+    private final BitGrid reachableMask;
+
+    // running totals for profiling; callers diff them between frames
+    private long cellsStepped;   // active cells visited by stepWater
+    private long maskRebuilds;   // full flag rebuilds (onLevelChanged, or an onTilesOpened fallback)
+    private long maskNanos;      // time spent in onLevelChanged and onTilesOpened
+
+    // optional parallel solver (null = sequential sweep)
+    private ForkJoinPool solverPool;
 
     // inlet/outlet tiles
     private int inletTx, inletTy;
@@ -36,33 +117,45 @@ public class WaterSystem {
 
     // sim + visuals
     private float waterTime = 0f;
+    private float lastDt = 0f;
+    private float renderTime = 0f;    // waterTime interpolated to the frame being drawn
 
     public float sourceTilesPerSec = 2.2f;
     public float downRate = 10.0f;
     public float sideRate = 4.0f;
     public float leakDrainRate = 12.0f;
     public int flowIterations = 4;
+    public float sleepEpsilon = 0.0005f; // moves smaller than this don't keep a cell awake
+    public int bandRows = 16;            // rows per band in the parallel solver (min 4)
 
     public float waterfallFluxThreshold = 0.02f;
     public float surfaceSkipFlux = 0.015f;
 
     // inlet falling-stream visual
     private float fallYPx;
+    private float prevFallYPx;
     private float fallVY = 0f;
     public float fallGravityPx = -2600f;
     private float impactYPx;
     private boolean waterStarted = false;
 
-    public WaterSystem(Level level,
+    public WaterSystem(TileGrid grid,
                        int inletTx, int inletTy,
                        int outletTx, int outletTy,
                        SolidQuery solidQuery) {
+        this(grid, inletTx, inletTy, outletTx, outletTy, solidQuery, Storage.FLOAT);
+    }
 
-        this.level = level;
-        this.mapW = level.mapW();
-        this.mapH = level.mapH();
-        this.tileW = level.tileW();
-        this.tileH = level.tileH();
+    public WaterSystem(TileGrid grid,
+                       int inletTx, int inletTy,
+                       int outletTx, int outletTy,
+                       SolidQuery solidQuery, Storage storage) {
+
+        this.grid = grid;
+        this.mapW = grid.mapW();
+        this.mapH = grid.mapH();
+        this.tileW = grid.tileW();
+        this.tileH = grid.tileH();
         this.solidQuery = solidQuery;
 
         this.inletTx = inletTx;
@@ -70,54 +163,463 @@ public class WaterSystem {
         this.outletTx = outletTx;
         this.outletTy = outletTy;
 
-        this.water = new float[mapH][mapW];
-        this.downFlux = new float[mapH][mapW];
-
-        computeOutsideMask();
-        computeReachableFromInlet();
-
-        inletPxFixed.set(level.tileCenterPx(this.inletTx, this.inletTy));
-        outletPxFixed.set(level.tileCenterPx(this.outletTx, this.outletTy));
+        this.chunksX = (mapW + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.chunksY = (mapH + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.fixed = storage == Storage.FIXED16;
+        this.water = fixed ? null : new float[chunksX * chunksY][];
+        this.downFlux = fixed ? null : new float[chunksX * chunksY][];
+        this.prevWater = fixed ? null : new float[chunksX * chunksY][];
+        this.waterQ = fixed ? new char[chunksX * chunksY][] : null;
+        this.downFluxQ = fixed ? new char[chunksX * chunksY][] : null;
+        this.prevWaterQ = fixed ? new char[chunksX * chunksY][] : null;
+        this.flags = new byte[chunksX * chunksY][];
+        this.flagFill = new byte[chunksX * chunksY];
+        this.changed = new ChunkBits(mapW, mapH);
+        this.columnSurfaces = new BitGrid(mapH, mapW);
+        this.surfaceCount = new int[mapW];
+        this.meshRowStale = new boolean[mapH];
+        this.rowLevels = new float[mapW];
+        this.active = new ChunkBits(mapW, mapH);
+        this.nextActive = new ChunkBits(mapW, mapH);
+        this.fluxCells = new ChunkBits(mapW, mapH);
+        this.openMask = new BitGrid(mapW, mapH);
+        this.outsideMask = new BitGrid(mapW, mapH);
+        this.reachableMask = new BitGrid(mapW, mapH);
+
+        refreshFlags();
+
+        inletPxFixed.set(grid.tileCenterPx(this.inletTx, this.inletTy));
+        outletPxFixed.set(grid.tileCenterPx(this.outletTx, this.outletTy));
 
         fallYPx = inletPxFixed.y;
+        prevFallYPx = fallYPx;
         fallVY = 0f;
         impactYPx = computeStreamImpactYPx();
         waterStarted = false;
     }
 
+    // -------------------------
+    // Chunked storage
+    // -------------------------
+    private int chunkOf(int x, int y) {
+        return (y >> CHUNK_SHIFT) * chunksX + (x >> CHUNK_SHIFT);
+    }
+
+    private static int cellOf(int x, int y) {
+        return ((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK);
+    }
+
+    private byte flagsIn(int c, int cell) {
+        byte[] f = flags[c];
+        return f == null ? flagFill[c] : f[cell];
+    }
+
+    private byte flagsAt(int x, int y) {
+        return flagsIn(chunkOf(x, y), cellOf(x, y));
+    }
+
+    private boolean hasStorage(int c) {
+        return fixed ? waterQ[c] != null : water[c] != null;
+    }
+
+    private float waterIn(int c, int cell) {
+        if (fixed) {
+            char[] w = waterQ[c];
+            return w == null ? 0f : w[cell] * TO_LEVEL;
+        }
+        float[] w = water[c];
+        return w == null ? 0f : w[cell];
+    }
+
+    private float waterAt(int x, int y) {
+        return waterIn(chunkOf(x, y), cellOf(x, y));
+    }
+
+    private float prevWaterAt(int x, int y) {
+        int c = chunkOf(x, y), cell = cellOf(x, y);
+        if (fixed) {
+            char[] w = prevWaterQ[c];
+            return w == null ? 0f : w[cell] * TO_LEVEL;
+        }
+        float[] w = prevWater[c];
+        return w == null ? 0f : w[cell];
+    }
+
+    private float downFluxAt(int x, int y) {
+        int c = chunkOf(x, y), cell = cellOf(x, y);
+        if (fixed) {
+            char[] f = downFluxQ[c];
+            return f == null ? 0f : f[cell] * TO_LEVEL;
+        }
+        float[] f = downFlux[c];
+        return f == null ? 0f : f[cell];
+    }
+
+    /** A level in tiles as FIXED16 units. Float rounding is the same on every JVM, so this is too. */
+    private static int toUnits(float level) {
+        return Math.round(level * UNIT);
+    }
+
+    /** Per-cell flags of chunk c, expanding a uniform chunk first. */
+    private byte[] cellFlags(int c) {
+        byte[] f = flags[c];
+        if (f == null) {
+            f = flags[c] = new byte[CHUNK_CELLS];
+            Arrays.fill(f, flagFill[c]);
+        }
+        return f;
+    }
+
+    /** ORs f into the tile's flags; setting HOLDS gives the chunk water storage. */
+    private void orFlags(int x, int y, byte f) {
+        int c = chunkOf(x, y);
+        cellFlags(c)[cellOf(x, y)] |= f;
+        if ((f & HOLDS) != 0) allocateWater(c);
+    }
+
+    private void clearSolid(int x, int y) {
+        cellFlags(chunkOf(x, y))[cellOf(x, y)] &= ~SOLID;
+    }
+
+    private void allocateWater(int c) {
+        if (hasStorage(c)) return;
+        if (fixed) {
+            waterQ[c] = new char[CHUNK_CELLS];
+            prevWaterQ[c] = new char[CHUNK_CELLS];
+            downFluxQ[c] = new char[CHUNK_CELLS];
+        } else {
+            water[c] = new float[CHUNK_CELLS];
+            prevWater[c] = new float[CHUNK_CELLS];
+            downFlux[c] = new float[CHUNK_CELLS];
+        }
+        waterChunks++;
+    }
+
+    private void releaseWater(int c) {
+        if (!hasStorage(c)) return;
+        if (fixed) waterQ[c] = prevWaterQ[c] = downFluxQ[c] = null;
+        else water[c] = prevWater[c] = downFlux[c] = null;
+        waterChunks--;
+    }
+
     // -------------------------
     // Solid/Open helpers
     // -------------------------
     private boolean isSolid(int x, int y) {
-        return solidQuery != null && solidQuery.isSolid(x, y);
+        return (flagsAt(x, y) & SOLID) != 0;
     }
 
-    private boolean isOpen(int x, int y) {
-        return !isSolid(x, y);
+    /** What the level says now: grid walls are always solid, other tiles ask the SolidQuery. */
+    private boolean isSolidInLevel(int x, int y) {
+        return grid.getWalls().get(x, y) || (solidQuery != null && solidQuery.isSolid(x, y));
     }
 
-    // IMPORTANT: if a tile becomes solid (vocab block), remove any stored water there
-    private void purgeWaterInSolids() {
+    /**
+     * Rebuilds the flags. This and openTiles() are the only places the level is consulted,
+     * so the sim loops below never go through the SolidQuery. Grid walls are always solid and
+     * are taken from the wall bitset a word at a time; only the open tiles are queried.
+     */
+    private void refreshFlags() {
+        computeMasks();
+        buildFlagChunks();
+    }
+
+    /** The open mask from the level, then the outside and reachable masks flooded through it. */
+    private void computeMasks() {
+        BitGrid walls = grid.getWalls();
         for (int y = 0; y < mapH; y++) {
-            for (int x = 0; x < mapW; x++) {
-                if (isSolid(x, y)) {
-                    water[y][x] = 0f;
-                    downFlux[y][x] = 0f;
+            for (int x = 0; x < mapW; x += 64) {
+                long wallBits = walls.bits(x, y);
+                long open = 0L;
+                for (int b = 0, n = Math.min(64, mapW - x); b < n; b++) {
+                    if ((wallBits & (1L << b)) == 0 && (solidQuery == null || !solidQuery.isSolid(x + b, y))) {
+                        open |= 1L << b;
+                    }
                 }
+                openMask.words[y * openMask.wordsPerRow + (x >>> 6)] = open;
             }
         }
+
+        computeOutsideMask();
+        computeReachableFromInlet();
+    }
+
+    /**
+     * Folds the open / outside / reachable masks into the chunk flags, gives every chunk that
+     * can hold water its storage and lists the leak cells. Chunks whose cells all agree are
+     * stored as a single byte (cells past the map edge copy the chunk's first cell).
+     */
+    private void buildFlagChunks() {
+        byte[] scratch = new byte[CHUNK_CELLS];
+        leakCount = 0;
+        for (int cy = 0, c = 0; cy < chunksY; cy++) {
+            for (int cx = 0; cx < chunksX; cx++, c++) {
+                int x0 = cx << CHUNK_SHIFT, y0 = cy << CHUNK_SHIFT;
+                boolean uniform = true, holds = false;
+                for (int cell = 0; cell < CHUNK_CELLS; cell++) {
+                    int x = x0 + (cell & CHUNK_MASK), y = y0 + (cell >> CHUNK_SHIFT);
+                    if (x >= mapW || y >= mapH) {
+                        scratch[cell] = scratch[0];
+                        continue;
+                    }
+
+                    byte f = openMask.get(x, y) ? 0 : SOLID;
+                    if (outsideMask.get(x, y)) f |= OUTSIDE;
+                    if (reachableMask.get(x, y)) f |= REACHABLE;
+                    if (f == REACHABLE) {
+                        f |= HOLDS;
+                        holds = true;
+                        // outside tiles are open by construction, so the outside mask alone marks a leak
+                        if (outsideMask.get(x - 1, y) || outsideMask.get(x + 1, y) ||
+                                outsideMask.get(x, y - 1) || outsideMask.get(x, y + 1)) {
+                            f |= LEAK_EDGE;
+                            if (leakCount == leakCells.length) leakCells = Arrays.copyOf(leakCells, Math.max(16, leakCount * 2));
+                            leakCells[leakCount++] = y * mapW + x;
+                        }
+                    }
+                    scratch[cell] = f;
+                    uniform &= f == scratch[0];
+                }
+
+                if (uniform) {
+                    flags[c] = null;
+                    flagFill[c] = scratch[0];
+                } else {
+                    if (flags[c] == null) flags[c] = new byte[CHUNK_CELLS];
+                    System.arraycopy(scratch, 0, flags[c], 0, CHUNK_CELLS);
+                }
+                if (holds) allocateWater(c);
+            }
+        }
+    }
+
+    // IMPORTANT: if a tile becomes solid (vocab block) or cut off, remove any stored water there.
+    // Chunks left without a single cell that can hold water give their storage back.
+    private void purgeWaterInSolids() {
+        for (int c = 0; c < flagFill.length; c++) {
+            if (!hasStorage(c)) continue;
+
+            int x0 = (c % chunksX) << CHUNK_SHIFT, y0 = (c / chunksX) << CHUNK_SHIFT;
+            boolean holds = false;
+            for (int cell = 0; cell < CHUNK_CELLS; cell++) {
+                if ((flagsIn(c, cell) & HOLDS) != 0) {
+                    holds = true;
+                    continue;
+                }
+                if (fixed) {
+                    if (waterQ[c][cell] == 0) continue;
+                    removedUnits += waterQ[c][cell];
+                    waterQ[c][cell] = 0;
+                    downFluxQ[c][cell] = 0;
+                } else {
+                    if (water[c][cell] == 0f) continue;
+                    water[c][cell] = 0f;
+                    downFlux[c][cell] = 0f;
+                }
+                changed.set(x0 + (cell & CHUNK_MASK), y0 + (cell >> CHUNK_SHIFT));
+            }
+            if (!holds) releaseWater(c);
+        }
     }
 
     // -------------------------
     // Public API
     // -------------------------
     public void onLevelChanged() {
-        computeOutsideMask();
-        computeReachableFromInlet();
+        long t0 = System.nanoTime();
+        rebuildAll();
+        maskNanos += System.nanoTime() - t0;
+    }
+
+    private void rebuildAll() {
+        maskRebuilds++;
+        refreshFlags();
         impactYPx = computeStreamImpactYPx();
         purgeWaterInSolids();
+        refreshSurfaces();
+        wakeAllWater();
+    }
+
+    /**
+     * Cheaper onLevelChanged() for when the tiles in [x0..x1] x [y0..y1] can only have opened
+     * (a wall or vocab block was removed). Opening tiles only ever joins regions, so the outside
+     * and reachable masks are grown from the opened tiles into the regions they newly connect,
+     * costing the size of those regions instead of a full rebuild.
+     *
+     * The two masks already act as the component labels the solver cares about (outside /
+     * inlet basin / everything else), so no separate label array is kept. Falls back to
+     * onLevelChanged() if a tile closed or the inlet basin got connected to the outside,
+     * since the inlet then has to move.
+     */
+    public void onTilesOpened(int x0, int y0, int x1, int y1) {
+        long t0 = System.nanoTime();
+        openTiles(x0, y0, x1, y1);
+        maskNanos += System.nanoTime() - t0;
     }
 
+    private void openTiles(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(mapW - 1, x1);
+        y1 = Math.min(mapH - 1, y1);
+        if (x0 > x1 || y0 > y1) return;
+
+        int[] opened = openedCells;
+        int openedCount = 0;
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                boolean solidNow = isSolidInLevel(x, y);
+                boolean solidBefore = isSolid(x, y);
+                if (solidNow == solidBefore) continue;
+                if (solidNow) {
+                    rebuildAll();
+                    return;
+                }
+                clearSolid(x, y);
+                if (openedCount == opened.length) opened = openedCells = Arrays.copyOf(opened, openedCount * 2);
+                opened[openedCount++] = y * mapW + x;
+            }
+        }
+        if (openedCount == 0) return;
+
+        // 1) outside spreads into everything the opened tiles now connect to the border
+        int qn = 0;
+        for (int k = 0; k < openedCount; k++) {
+            int i = opened[k];
+            int x = i % mapW, y = i / mapW;
+            boolean border = x == 0 || y == 0 || x == mapW - 1 || y == mapH - 1;
+            if (border || hasNeighbourFlag(x, y, OUTSIDE)) {
+                orFlags(x, y, OUTSIDE);
+                qn = pushFlood(qn, i);
+            }
+        }
+        if (!floodIncremental(qn, OUTSIDE, REACHABLE)) {
+            rebuildAll();
+            return;
+        }
+
+        // 2) the inlet basin spreads into whatever the opened tiles joined it with
+        qn = 0;
+        for (int k = 0; k < openedCount; k++) {
+            int i = opened[k];
+            int x = i % mapW, y = i / mapW;
+            if ((flagsAt(x, y) & OUTSIDE) != 0) continue;
+            if (hasNeighbourFlag(x, y, REACHABLE)) {
+                orFlags(x, y, (byte) (REACHABLE | HOLDS));
+                qn = pushFlood(qn, i);
+            }
+        }
+        if (!floodIncremental(qn, (byte) (REACHABLE | HOLDS), OUTSIDE)) {
+            rebuildAll();
+            return;
+        }
+
+        impactYPx = computeStreamImpactYPx();
+        for (int k = 0; k < openedCount; k++) {
+            active.setWithNeighbours(opened[k] % mapW, opened[k] / mapW);
+        }
+    }
+
+    /**
+     * Only the mask pass of onLevelChanged(): rebuilds the open, outside and reachable masks from
+     * the level but leaves the flags and the water alone, so it changes nothing unless the level
+     * did. For timing the pass on its own (WaterMaskBenchmark).
+     */
+    public void recomputeMasks() {
+        computeMasks();
+    }
+
+    /** Wakes every wet cell and its neighbours so settled pools react to new geometry. */
+    private void wakeAllWater() {
+        for (int c = 0; c < flagFill.length; c++) {
+            if (!hasStorage(c)) continue;
+            int x0 = (c % chunksX) << CHUNK_SHIFT, y0 = (c / chunksX) << CHUNK_SHIFT;
+            for (int cell = 0; cell < CHUNK_CELLS; cell++) {
+                if (waterIn(c, cell) > 0f) active.setWithNeighbours(x0 + (cell & CHUNK_MASK), y0 + (cell >> CHUNK_SHIFT));
+            }
+        }
+    }
+
+    /**
+     * Runs the solver on a fork-join pool with the given number of threads; 1 or less
+     * switches back to the sequential sweep.
+     *
+     * The parallel solver sweeps the grid as row bands: first every even band, then every
+     * odd band. A band only writes its own rows plus the top row of the band below it, which
+     * is never being swept in the same phase, so no two threads touch the same cell. Band
+     * boundaries depend only on bandRows, so results are bit-identical for any thread count
+     * (they differ slightly from the sequential sweep, which lets water cross band
+     * boundaries in scan order).
+     */
+    public void setSolverThreads(int threads) {
+        if (solverPool != null) {
+            solverPool.shutdown();
+            solverPool = null;
+        }
+        if (threads > 1) solverPool = new ForkJoinPool(threads);
+    }
+
+    /** Active cells visited by the solver since construction (each sub-iteration counts). */
+    public long getCellsStepped() { return cellsStepped; }
+
+    /** Full mask rebuilds since construction. */
+    public long getMaskRebuilds() { return maskRebuilds; }
+
+    /** Nanoseconds spent in onLevelChanged and onTilesOpened since construction. */
+    public long getMaskNanos() { return maskNanos; }
+
+    /** Threads of the parallel solver, 1 for the sequential sweep. */
+    public int getSolverThreads() {
+        return solverPool == null ? 1 : solverPool.getParallelism();
+    }
+
+    public void dispose() {
+        setSolverThreads(0);
+        if (bodyMesh != null) bodyMesh.dispose();
+        bodyMesh = null;
+    }
+
+    /** Quads in the cached water body mesh as of the last render. */
+    public int getBodyQuadCount() {
+        return bodyMesh == null ? 0 : bodyMesh.quadCount();
+    }
+
+    /** Chunks that currently have water storage; each costs 3 * CHUNK * CHUNK floats (chars with FIXED16). */
+    public int getWaterChunkCount() { return waterChunks; }
+
+    public Storage getStorage() { return fixed ? Storage.FIXED16 : Storage.FLOAT; }
+
+    /** Total stored water in tiles. */
+    public double getTotalWater() {
+        if (fixed) return getTotalWaterUnits() / (double) UNIT;
+        double sum = 0;
+        for (float[] w : water) {
+            if (w == null) continue;
+            for (float v : w) sum += v;
+        }
+        return sum;
+    }
+
+    /**
+     * Total stored water in 1/UNIT tiles. With FIXED16 storage this always equals
+     * getAddedUnits() - getRemovedUnits() exactly; with FLOAT it is only the rounded total.
+     */
+    public long getTotalWaterUnits() {
+        if (!fixed) return Math.round(getTotalWater() * UNIT);
+        long sum = 0;
+        for (char[] w : waterQ) {
+            if (w == null) continue;
+            for (char v : w) sum += v;
+        }
+        return sum;
+    }
+
+    /** FIXED16 only: units added by the inlet so far. */
+    public long getAddedUnits() { return addedUnits; }
+
+    /** FIXED16 only: units drained through leaks or removed by geometry changes so far. */
+    public long getRemovedUnits() { return removedUnits; }
+
     public boolean isWaterStarted() { return waterStarted; }
 
     public float getWaterTime() { return waterTime; }
@@ -125,19 +627,47 @@ public class WaterSystem {
     public float getLocalSurfacePx(int tx, int ty) {
         if (tx < 0 || tx >= mapW || ty < 0 || ty >= mapH) return 0f;
         float tileBottomPx = ty * tileH;
-        return tileBottomPx + water[ty][tx] * tileH;
+        return tileBottomPx + waterAt(tx, ty) * tileH;
+    }
+
+    /**
+     * Height in px of the water surface seen from tile (tx, ty): the top of the wet stack that
+     * contains ty, or of the stack directly below ty if ty itself is dry. Reads the column
+     * heightmap, so deep pools report their real surface instead of just this tile's fill.
+     * Falls back to getLocalSurfacePx when there is no water there.
+     */
+    public float getSurfacePx(int tx, int ty) {
+        if (tx < 0 || tx >= mapW || ty < 0 || ty >= mapH) return 0f;
+
+        int y;
+        if (waterAt(tx, ty) <= WET) {
+            if (ty == 0 || !columnSurfaces.get(ty - 1, tx)) return getLocalSurfacePx(tx, ty);
+            y = ty - 1;
+        } else {
+            y = columnSurfaces.nextSetBit(ty, tx);
+            if (y < 0) return getLocalSurfacePx(tx, ty);
+        }
+        return y * tileH + waterAt(tx, y) * tileH;
+    }
+
+    /** Number of separate water surfaces in column tx (stacked basins count separately). */
+    public int getSurfaceCount(int tx) {
+        if (tx < 0 || tx >= mapW) return 0;
+        return surfaceCount[tx];
     }
 
     public boolean isInWaterRegion(int tx, int ty) {
         if (tx < 0 || tx >= mapW || ty < 0 || ty >= mapH) return false;
-        if (reachable == null) return false;
-        return reachable[ty][tx] && !outside[ty][tx] && !isSolid(tx, ty);
+        return (flagsAt(tx, ty) & HOLDS) != 0;
     }
 
     public void update(float dt) {
+        commitPrevious();
+        lastDt = dt;
         waterTime += dt;
 
         // falling inlet visual
+        prevFallYPx = fallYPx;
         if (!waterStarted) {
             fallVY += fallGravityPx * dt;
             fallYPx += fallVY * dt;
@@ -149,15 +679,7 @@ public class WaterSystem {
             return;
         }
 
-        // ensure no water is stored in solid tiles (vocab blocks + walls)
-        purgeWaterInSolids();
-
-        // reset flux
-        for (int y = 0; y < mapH; y++) {
-            for (int x = 0; x < mapW; x++) {
-                downFlux[y][x] = 0f;
-            }
-        }
+        resetFlux();
 
         addWaterAtInlet(dt);
 
@@ -166,59 +688,223 @@ public class WaterSystem {
         }
 
         drainOutside(dt);
+        refreshSurfaces();
+        collectFalls();
+    }
+
+    /**
+     * Rebuilds the waterfall run list from the cells that carried flux this update.
+     * A run starts at a falling cell whose cell below is not falling and extends upwards.
+     */
+    private void collectFalls() {
+        fallCount = 0;
+        int n = fluxCells.index();
+        for (int k = 0; k < n; k++) {
+            int c = fluxCells.chunk(k);
+            int cx = c % chunksX, x0 = cx << CHUNK_SHIFT, y0 = (c / chunksX) << CHUNK_SHIFT;
+            for (int y = y0, y1 = Math.min(mapH, y0 + CHUNK); y < y1; y++) {
+                long bits = fluxCells.rowBits(cx, y);
+                while (bits != 0) {
+                    int x = x0 + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    float flux = downFluxAt(x, y);
+                    if (flux <= waterfallFluxThreshold) continue;
+                    if (y > 0 && downFluxAt(x, y - 1) > waterfallFluxThreshold) continue;
+
+                    float peak = flux;
+                    int end = y + 1;
+                    for (; end < mapH; end++) {
+                        float above = downFluxAt(x, end);
+                        if (above <= waterfallFluxThreshold) break;
+                        peak = Math.max(peak, above);
+                    }
+                    addFall(x, y, end, peak);
+                }
+            }
+        }
+    }
+
+    private void addFall(int x, int startY, int endY, float peak) {
+        if (fallCount == fallPeak.length) {
+            fallPeak = Arrays.copyOf(fallPeak, fallCount * 2);
+            falls = Arrays.copyOf(falls, fallCount * 6);
+        }
+        falls[fallCount * 3] = x;
+        falls[fallCount * 3 + 1] = startY;
+        falls[fallCount * 3 + 2] = endY;
+        fallPeak[fallCount++] = peak;
+    }
+
+    /** Number of waterfall runs found by the last update. */
+    public int getWaterfallCount() { return fallCount; }
+
+    /** Tile column of run k. */
+    public int getWaterfallX(int k) { return falls[k * 3]; }
+
+    /** Lowest tile row of run k (where it lands). */
+    public int getWaterfallStartY(int k) { return falls[k * 3 + 1]; }
+
+    /** One past the highest tile row of run k. */
+    public int getWaterfallEndY(int k) { return falls[k * 3 + 2]; }
+
+    /** Largest downFlux along run k. */
+    public float getWaterfallPeakFlux(int k) { return fallPeak[k]; }
+
+    /** Re-evaluates the surface bit of every changed cell and the cell below it. */
+    private void refreshSurfaces() {
+        int n = changed.index();
+        for (int k = 0; k < n; k++) {
+            int c = changed.chunk(k);
+            int cx = c % chunksX, x0 = cx << CHUNK_SHIFT, y0 = (c / chunksX) << CHUNK_SHIFT;
+            for (int y = y0, y1 = Math.min(mapH, y0 + CHUNK); y < y1; y++) {
+                long bits = changed.rowBits(cx, y);
+                while (bits != 0) {
+                    int x = x0 + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    updateSurface(x, y);
+                    if (y > 0) updateSurface(x, y - 1);
+                }
+            }
+        }
+    }
+
+    private void updateSurface(int x, int y) {
+        boolean surface = waterAt(x, y) > WET &&
+                (y == mapH - 1 || waterAt(x, y + 1) <= WET || isSolid(x, y + 1));
+        if (surface == columnSurfaces.get(y, x)) return;
+        if (surface) {
+            columnSurfaces.set(y, x);
+            surfaceCount[x]++;
+        } else {
+            columnSurfaces.clear(y, x);
+            surfaceCount[x]--;
+        }
+    }
+
+    /** Copies the cells changed by the last update into prevWater, so both agree again. */
+    private void commitPrevious() {
+        int n = changed.index();
+        for (int k = 0; k < n; k++) {
+            int c = changed.chunk(k);
+            int cx = c % chunksX, y0 = (c / chunksX) << CHUNK_SHIFT;
+            boolean stored = hasStorage(c); // false if the chunk was released by a purge
+            for (int y = y0, y1 = Math.min(mapH, y0 + CHUNK); y < y1; y++) {
+                long bits = changed.rowBits(cx, y);
+                if (bits == 0) continue;
+                meshRowStale[y] = true;
+                if (!stored) continue;
+                int rowBase = (y & CHUNK_MASK) << CHUNK_SHIFT;
+                while (bits != 0) {
+                    int cell = rowBase + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (fixed) prevWaterQ[c][cell] = waterQ[c][cell];
+                    else prevWater[c][cell] = water[c][cell];
+                }
+            }
+        }
+        changed.clearAll();
     }
 
     // -------------------------
     // Rendering
     // -------------------------
     public void render(ShapeRenderer shapes) {
-        renderInletStream(shapes);
-        if (!waterStarted) return;
+        render(shapes, 1f);
+    }
 
-        // water body
-        for (int y = 0; y < mapH; y++) {
-            float tileBottom = y * tileH;
-            for (int x = 0; x < mapW; x++) {
-                float w = water[y][x];
-                if (w <= 0f) continue;
-
-                float fillH = w * tileH;
-                shapes.setColor(0.0f, 0.55f, 1.0f, 0.75f);
-                shapes.rect(x * tileW, tileBottom, tileW, fillH);
-            }
+    /**
+     * @param alpha how far the frame is between the previous update (0) and the latest one (1)
+     */
+    public void render(ShapeRenderer shapes, float alpha) {
+        render(shapes, alpha, 0, 0, mapW - 1, mapH - 1);
+    }
+
+    /**
+     * Draws only the tiles in [tx0..tx1] x [ty0..ty1] (clipped to the map), e.g. the camera's view
+     * plus a margin, so the cost follows the screen and not the level. Rows outside the range keep
+     * their stale flag and are merged when they scroll in.
+     */
+    public void render(ShapeRenderer shapes, float alpha, int tx0, int ty0, int tx1, int ty1) {
+        tx0 = Math.max(0, tx0);
+        ty0 = Math.max(0, ty0);
+        tx1 = Math.min(mapW - 1, tx1);
+        ty1 = Math.min(mapH - 1, ty1);
+
+        renderTime = waterTime - (1f - alpha) * lastDt;
+        renderInletStream(shapes, MathUtils.lerp(prevFallYPx, fallYPx, alpha));
+        if (!waterStarted || tx0 > tx1 || ty0 > ty1) return;
+
+        // water body: cached span mesh, only rows the sim touched get re-merged. Rows are merged
+        // over a column window a chunk wider than the view on each side; leaving it rebuilds them.
+        if (bodyMesh == null) bodyMesh = new WaterMesh(mapH, tileW, tileH);
+        if (tx0 < meshX0 || tx1 >= meshX1) {
+            meshX0 = Math.max(0, ((tx0 >> CHUNK_SHIFT) - 1) << CHUNK_SHIFT);
+            meshX1 = Math.min(mapW, ((tx1 >> CHUNK_SHIFT) + 2) << CHUNK_SHIFT);
+            Arrays.fill(meshRowStale, true);
         }
+        for (int y = ty0; y <= ty1; y++) {
+            boolean moving = changed.rowHasBits(y); // still interpolating towards the last update
+            if (!moving && !meshRowStale[y]) continue;
+            fillRowLevels(y, moving ? alpha : 1f);
+            bodyMesh.buildRow(y, rowLevels, meshX0, meshX1);
+            meshRowStale[y] = false;
+        }
+        shapes.flush();
+        bodyMesh.render(shapes.getProjectionMatrix(), ty0, ty1 + 1, 0.0f, 0.55f, 1.0f, 0.75f);
 
         // surface highlights (skip waterfall tiles)
         shapes.setColor(0.75f, 0.92f, 1.0f, 0.55f);
-        for (int x = 0; x < mapW; x++) {
-            for (int y = 0; y < mapH; y++) {
-                float w = water[y][x];
-                if (w <= 0.01f) continue;
-
-                if (downFlux[y][x] > surfaceSkipFlux) continue;
-
-                boolean aboveEmpty =
-                        (y == mapH - 1) ||
-                                water[y + 1][x] <= 0.01f ||
-                                isSolid(x, y + 1);
-
-                if (!aboveEmpty) continue;
+        for (int x = tx0; x <= tx1; x++) {
+            if (surfaceCount[x] == 0) continue;
+            for (int y = columnSurfaces.nextSetBit(ty0, x); y >= 0 && y <= ty1; y = columnSurfaces.nextSetBit(y + 1, x)) {
+                if (downFluxAt(x, y) > surfaceSkipFlux) continue;
 
+                float prev = prevWaterAt(x, y);
+                float w = prev + (waterAt(x, y) - prev) * alpha;
                 float tileBottom = y * tileH;
                 float surfaceY = tileBottom + w * tileH;
-                float wave = MathUtils.sin((x * 0.8f) + waterTime * 3f) * 2.5f;
+                float wave = MathUtils.sin((x * 0.8f) + renderTime * 3f) * 2.5f;
 
                 shapes.rect(x * tileW, surfaceY - 3f + wave, tileW, 3f);
             }
         }
 
-        renderWaterfalls(shapes);
+        renderWaterfalls(shapes, tx0, ty0, tx1, ty1);
     }
 
-    private void renderInletStream(ShapeRenderer shapes) {
+    /**
+     * Columns [meshX0, meshX1) of row y, as prevWater + (water - prevWater) * alpha, into rowLevels;
+     * chunks without storage are dry.
+     */
+    private void fillRowLevels(int y, float alpha) {
+        int rowBase = (y & CHUNK_MASK) << CHUNK_SHIFT;
+        int cxEnd = (meshX1 + CHUNK_MASK) >> CHUNK_SHIFT;
+        for (int cx = meshX0 >> CHUNK_SHIFT, c = (y >> CHUNK_SHIFT) * chunksX + cx; cx < cxEnd; cx++, c++) {
+            int x0 = cx << CHUNK_SHIFT, x1 = Math.min(mapW, x0 + CHUNK);
+            if (!hasStorage(c)) {
+                Arrays.fill(rowLevels, x0, x1, 0f);
+                continue;
+            }
+            if (fixed) {
+                char[] w = waterQ[c], prev = prevWaterQ[c];
+                for (int x = x0, cell = rowBase; x < x1; x++, cell++) {
+                    float p = prev[cell] * TO_LEVEL;
+                    rowLevels[x] = p + (w[cell] * TO_LEVEL - p) * alpha;
+                }
+                continue;
+            }
+            float[] w = water[c], prev = prevWater[c];
+            for (int x = x0, cell = rowBase; x < x1; x++, cell++) {
+                rowLevels[x] = prev[cell] + (w[cell] - prev[cell]) * alpha;
+            }
+        }
+    }
+
+    private void renderInletStream(ShapeRenderer shapes, float fallY) {
         float sx = inletPxFixed.x;
         float syTop = inletPxFixed.y;
-        float syBot = waterStarted ? impactYPx : fallYPx;
+        float syBot = waterStarted ? impactYPx : fallY;
 
         float ribbonW = 10f;
         int segs = 18;
@@ -235,8 +921,8 @@ public class WaterSystem {
             float y0 = MathUtils.lerp(topY, bottomY, a0);
             float y1 = MathUtils.lerp(topY, bottomY, a1);
 
-            float wob0 = MathUtils.sin(waterTime * 8f + a0 * 6f) * 2.5f;
-            float wob1 = MathUtils.sin(waterTime * 8f + a1 * 6f) * 2.5f;
+            float wob0 = MathUtils.sin(renderTime * 8f + a0 * 6f) * 2.5f;
+            float wob1 = MathUtils.sin(renderTime * 8f + a1 * 6f) * 2.5f;
 
             float segBottom = Math.min(y0, y1);
             float segTop = Math.max(y0, y1);
@@ -249,55 +935,45 @@ public class WaterSystem {
         }
     }
 
-    private void renderWaterfalls(ShapeRenderer shapes) {
-        for (int x = 0; x < mapW; x++) {
-            int y = 0;
-            while (y < mapH) {
-                while (y < mapH && downFlux[y][x] <= waterfallFluxThreshold) y++;
-                if (y >= mapH) break;
-
-                int startY = y;
-                float maxFlux = downFlux[y][x];
+    private void renderWaterfalls(ShapeRenderer shapes, int tx0, int ty0, int tx1, int ty1) {
+        for (int k = 0; k < fallCount; k++) {
+            int x = falls[k * 3];
+            int startY = falls[k * 3 + 1];
+            int endY = falls[k * 3 + 2];
+            if (x < tx0 || x > tx1 || startY > ty1 || endY <= ty0) continue;
+            float maxFlux = fallPeak[k];
+            float runBottom = startY * tileH;
+            float runTop = endY * tileH;
+            float runH = runTop - runBottom;
+            if (runH <= 1f) continue;
 
-                while (y < mapH && downFlux[y][x] > waterfallFluxThreshold) {
-                    maxFlux = Math.max(maxFlux, downFlux[y][x]);
-                    y++;
-                }
-                int endY = y;
-
-                float runBottom = startY * tileH;
-                float runTop = endY * tileH;
-                float runH = runTop - runBottom;
-                if (runH <= 1f) continue;
+            float alpha = MathUtils.clamp(0.25f + maxFlux * 1.4f, 0.25f, 0.95f);
+            float baseW = MathUtils.clamp(8f + maxFlux * 20f, 8f, 18f);
 
-                float alpha = MathUtils.clamp(0.25f + maxFlux * 1.4f, 0.25f, 0.95f);
-                float baseW = MathUtils.clamp(8f + maxFlux * 20f, 8f, 18f);
+            int runSegs = MathUtils.clamp((int) (runH / 16f), 10, 40);
+            float centerX = (x + 0.5f) * tileW;
 
-                int runSegs = MathUtils.clamp((int) (runH / 16f), 10, 40);
-                float centerX = (x + 0.5f) * tileW;
+            for (int i = 0; i < runSegs; i++) {
+                float a0 = i / (float) runSegs;
 
-                for (int i = 0; i < runSegs; i++) {
-                    float a0 = i / (float) runSegs;
+                float y0 = MathUtils.lerp(runTop, runBottom, a0);
+                float y1 = MathUtils.lerp(runTop, runBottom, (i + 1) / (float) runSegs);
 
-                    float y0 = MathUtils.lerp(runTop, runBottom, a0);
-                    float y1 = MathUtils.lerp(runTop, runBottom, (i + 1) / (float) runSegs);
+                float segBottom = Math.min(y0, y1);
+                float segTop = Math.max(y0, y1);
 
-                    float segBottom = Math.min(y0, y1);
-                    float segTop = Math.max(y0, y1);
+                float wob0 = MathUtils.sin(renderTime * 8f + a0 * 6f + x * 0.7f) * 2.5f;
+                float wob1 = MathUtils.sin(renderTime * 11f + a0 * 9f + x * 0.4f) * 1.6f;
+                float wob = wob0 * 0.7f + wob1 * 0.3f;
 
-                    float wob0 = MathUtils.sin(waterTime * 8f + a0 * 6f + x * 0.7f) * 2.5f;
-                    float wob1 = MathUtils.sin(waterTime * 11f + a0 * 9f + x * 0.4f) * 1.6f;
-                    float wob = wob0 * 0.7f + wob1 * 0.3f;
+                float taper = 1f - 0.25f * a0;
+                float w = baseW * taper;
 
-                    float taper = 1f - 0.25f * a0;
-                    float w = baseW * taper;
+                shapes.setColor(0.65f, 0.9f, 1.0f, alpha);
+                shapes.rect(centerX - w * 0.5f + wob, segBottom, w, segTop - segBottom);
 
-                    shapes.setColor(0.65f, 0.9f, 1.0f, alpha);
-                    shapes.rect(centerX - w * 0.5f + wob, segBottom, w, segTop - segBottom);
-
-                    shapes.setColor(0.78f, 0.95f, 1.0f, alpha * 0.6f);
-                    shapes.rect(centerX - w * 0.25f + wob * 0.7f, segBottom, w * 0.5f, segTop - segBottom);
-                }
+                shapes.setColor(0.78f, 0.95f, 1.0f, alpha * 0.6f);
+                shapes.rect(centerX - w * 0.25f + wob * 0.7f, segBottom, w * 0.5f, segTop - segBottom);
             }
         }
     }
@@ -307,185 +983,382 @@ public class WaterSystem {
     // -------------------------
     private void addWaterAtInlet(float dt) {
         if (inletTx < 0 || inletTx >= mapW || inletTy < 0 || inletTy >= mapH) return;
-        if (isSolid(inletTx, inletTy)) return;
-        if (!reachable[inletTy][inletTx]) return;
-        if (outside[inletTy][inletTx]) return;
+        int c = chunkOf(inletTx, inletTy), cell = cellOf(inletTx, inletTy);
+        if ((flagsIn(c, cell) & HOLDS) == 0) return;
+
+        if (fixed) {
+            char[] w = waterQ[c];
+            int before = w[cell];
+            int after = Math.min(UNIT, before + toUnits(sourceTilesPerSec * dt));
+            if (after == before) return;
+            w[cell] = (char) after;
+            addedUnits += after - before;
+            changed.set(inletTx, inletTy);
+            if (after - before > toUnits(sleepEpsilon)) active.setWithNeighbours(inletTx, inletTy);
+            return;
+        }
 
-        water[inletTy][inletTx] = Math.min(1f, water[inletTy][inletTx] + sourceTilesPerSec * dt);
+        float[] w = water[c];
+        float before = w[cell];
+        w[cell] = Math.min(1f, before + sourceTilesPerSec * dt);
+        if (w[cell] != before) changed.set(inletTx, inletTy);
+        if (w[cell] - before > sleepEpsilon) active.setWithNeighbours(inletTx, inletTy);
+    }
+
+    private void resetFlux() {
+        int n = fluxCells.index();
+        for (int k = 0; k < n; k++) {
+            int c = fluxCells.chunk(k);
+            if (!hasStorage(c)) continue;
+            if (fixed) Arrays.fill(downFluxQ[c], (char) 0);
+            else Arrays.fill(downFlux[c], 0f);
+        }
+        fluxCells.clearAll();
     }
 
     private void stepWater(float dt) {
-        for (int y = 0; y < mapH; y++) {
-            for (int x = 0; x < mapW; x++) {
-                if (isSolid(x, y)) { water[y][x] = 0f; continue; }
-                if (!reachable[y][x]) { water[y][x] = 0f; continue; }
-                if (outside[y][x]) { water[y][x] = 0f; continue; }
+        float maxDown = downRate * dt;
+        float maxSide = sideRate * dt;
 
-                float w = water[y][x];
-                if (w <= 0f) continue;
+        int rows = Math.max(4, bandRows);
+        int bands = (mapH + rows - 1) / rows;
 
-                // down
-                if (y > 0 && canHoldWater(x, y - 1)) {
-                    float space = 1f - water[y - 1][x];
-                    if (space > 0f) {
-                        float move = Math.min(w, space);
-                        move = Math.min(move, downRate * dt);
+        cellsStepped += active.countIndexed(active.index());
 
-                        water[y][x] -= move;
-                        water[y - 1][x] += move;
+        if (solverPool != null && bands >= 4) {
+            solverPool.invoke(new BandSweep(0, bands, 0, rows, maxDown, maxSide));
+            solverPool.invoke(new BandSweep(0, bands, 1, rows, maxDown, maxSide));
+        } else {
+            sweepRows(0, mapH, maxDown, maxSide);
+        }
 
-                        downFlux[y][x] += move;
+        ChunkBits t = active;
+        active = nextActive;
+        nextActive = t;
+        nextActive.clearAll();
+    }
 
-                        w = water[y][x];
-                        if (w <= 0f) continue;
-                    }
+    /**
+     * Steps the active cells of rows [y0, y1) in row-major order. Only the chunks listed by the last
+     * active.index() are looked at. Results differ from a full sweep by design: a cell woken during
+     * this pass goes into nextActive and is first stepped in the next sub-iteration, where a full
+     * sweep would already have moved it now. Compare against a baseline by volume, not per cell.
+     */
+    private void sweepRows(int y0, int y1, float maxDown, float maxSide) {
+        // FIXED16: the per-step limits are rounded to units once, everything below is integer
+        int maxDownQ = toUnits(maxDown), maxSideQ = toUnits(maxSide);
+        int sleepQ = toUnits(sleepEpsilon), minDiffQ = toUnits(SIDE_MIN_DIFF);
+        for (int y = y0; y < y1; y++) {
+            int cy = y >> CHUNK_SHIFT;
+            for (int k = active.rowFirst(cy), end = active.rowEnd(cy); k < end; k++) {
+                int cx = active.chunk(k) - cy * chunksX;
+                long bits = active.rowBits(cx, y);
+                int x0 = cx << CHUNK_SHIFT;
+                while (bits != 0) {
+                    int x = x0 + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (fixed) stepCellFixed(x, y, maxDownQ, maxSideQ, sleepQ, minDiffQ);
+                    else stepCell(x, y, maxDown, maxSide);
                 }
+            }
+        }
+    }
+
+    /** Sweeps every band in [first, last) whose index has the given parity, splitting until one band per task. */
+    private class BandSweep extends RecursiveAction {
+        private final int first, last, parity, rows;
+        private final float maxDown, maxSide;
+
+        BandSweep(int first, int last, int parity, int rows, float maxDown, float maxSide) {
+            this.first = first;
+            this.last = last;
+            this.parity = parity;
+            this.rows = rows;
+            this.maxDown = maxDown;
+            this.maxSide = maxSide;
+        }
 
-                // sideways
-                flowSide(x, y, -1, dt);
-                flowSide(x, y, +1, dt);
+        @Override
+        protected void compute() {
+            if (last - first <= 2) {
+                for (int b = first; b < last; b++) {
+                    if ((b & 1) != parity) continue;
+                    sweepRows(b * rows, Math.min(mapH, (b + 1) * rows), maxDown, maxSide);
+                }
+                return;
             }
+            int mid = (first + last) >>> 1;
+            invokeAll(new BandSweep(first, mid, parity, rows, maxDown, maxSide),
+                    new BandSweep(mid, last, parity, rows, maxDown, maxSide));
         }
     }
 
-    private boolean canHoldWater(int x, int y) {
-        if (x < 0 || x >= mapW || y < 0 || y >= mapH) return false;
-        if (isSolid(x, y)) return false;
-        if (!reachable[y][x]) return false;
-        if (outside[y][x]) return false;
-        return true;
+    private void stepCell(int x, int y, float maxDown, float maxSide) {
+        int c = chunkOf(x, y), cell = cellOf(x, y);
+
+        // cells that can't hold water were emptied by purgeWaterInSolids()
+        if ((flagsIn(c, cell) & HOLDS) == 0) return;
+
+        float[] wc = water[c]; // HOLDS guarantees storage
+        float w = wc[cell];
+        if (w <= 0f) return;
+
+        // down
+        if (y > 0) {
+            int bc = chunkOf(x, y - 1), bcell = cellOf(x, y - 1);
+            if ((flagsIn(bc, bcell) & HOLDS) != 0) {
+                float[] below = water[bc];
+                float space = 1f - below[bcell];
+                if (space > 0f) {
+                    float move = Math.min(w, space);
+                    move = Math.min(move, maxDown);
+
+                    wc[cell] -= move;
+                    below[bcell] += move;
+
+                    downFlux[c][cell] += move;
+                    fluxCells.set(x, y);
+                    changed.set(x, y);
+                    changed.set(x, y - 1);
+
+                    if (move > sleepEpsilon) {
+                        nextActive.setWithNeighbours(x, y);
+                        nextActive.setWithNeighbours(x, y - 1);
+                    }
+
+                    w = wc[cell];
+                    if (w <= 0f) return;
+                }
+            }
+        }
+
+        // sideways
+        if (x > 0) flowSide(x, y, -1, maxSide);
+        if (x < mapW - 1) flowSide(x, y, +1, maxSide);
     }
 
-    private void flowSide(int x, int y, int dir, float dt) {
+    private void flowSide(int x, int y, int dir, float maxSide) {
         int nx = x + dir;
-        if (!canHoldWater(nx, y)) return;
+        int nc = chunkOf(nx, y), ncell = cellOf(nx, y);
+        if ((flagsIn(nc, ncell) & HOLDS) == 0) return;
 
-        float a = water[y][x];
-        float b = water[y][nx];
+        float[] wc = water[chunkOf(x, y)], nw = water[nc];
+        int cell = cellOf(x, y);
+        float a = wc[cell];
+        float b = nw[ncell];
         if (a <= 0f) return;
 
         float diff = a - b;
-        if (diff <= 0.02f) return;
+        if (diff <= SIDE_MIN_DIFF) return;
 
         float want = diff * 0.5f;
-        float move = Math.min(want, sideRate * dt);
+        float move = Math.min(want, maxSide);
         move = Math.min(move, a);
 
-        water[y][x] -= move;
-        water[y][nx] += move;
-    }
+        wc[cell] -= move;
+        nw[ncell] += move;
 
-    private void drainOutside(float dt) {
-        int[] dx = {1, -1, 0, 0};
-        int[] dy = {0, 0, 1, -1};
+        changed.set(x, y);
+        changed.set(nx, y);
+        if (move > sleepEpsilon) {
+            nextActive.setWithNeighbours(x, y);
+            nextActive.setWithNeighbours(nx, y);
+        }
+    }
 
-        for (int y = 0; y < mapH; y++) {
-            for (int x = 0; x < mapW; x++) {
-                if (isSolid(x, y)) continue;
-                if (!reachable[y][x]) continue;
-                if (outside[y][x]) continue;
-
-                float w = water[y][x];
-                if (w <= 0f) continue;
-
-                boolean nearOutside = false;
-                for (int i = 0; i < 4; i++) {
-                    int nx = x + dx[i];
-                    int ny = y + dy[i];
-                    if (nx < 0 || nx >= mapW || ny < 0 || ny >= mapH) continue;
-                    if (outside[ny][nx] && isOpen(nx, ny)) {
-                        nearOutside = true;
-                        break;
+    /** stepCell in FIXED16 units: every move is a whole number of units, so no water is lost or made. */
+    private void stepCellFixed(int x, int y, int maxDown, int maxSide, int sleep, int minDiff) {
+        int c = chunkOf(x, y), cell = cellOf(x, y);
+        if ((flagsIn(c, cell) & HOLDS) == 0) return;
+
+        char[] wc = waterQ[c];
+        int w = wc[cell];
+        if (w == 0) return;
+
+        // down
+        if (y > 0) {
+            int bc = chunkOf(x, y - 1), bcell = cellOf(x, y - 1);
+            if ((flagsIn(bc, bcell) & HOLDS) != 0) {
+                char[] below = waterQ[bc];
+                int space = UNIT - below[bcell];
+                if (space > 0) {
+                    int move = Math.min(Math.min(w, space), maxDown);
+
+                    w -= move;
+                    wc[cell] = (char) w;
+                    below[bcell] += move;
+
+                    char[] flux = downFluxQ[c];
+                    flux[cell] = (char) Math.min(FLUX_MAX, flux[cell] + move);
+                    fluxCells.set(x, y);
+                    changed.set(x, y);
+                    changed.set(x, y - 1);
+
+                    if (move > sleep) {
+                        nextActive.setWithNeighbours(x, y);
+                        nextActive.setWithNeighbours(x, y - 1);
                     }
-                }
 
-                if (nearOutside) {
-                    float drain = Math.min(w, leakDrainRate * dt);
-                    water[y][x] -= drain;
+                    if (w == 0) return;
                 }
             }
         }
+
+        // sideways
+        if (x > 0) flowSideFixed(x, y, -1, maxSide, sleep, minDiff);
+        if (x < mapW - 1) flowSideFixed(x, y, +1, maxSide, sleep, minDiff);
+    }
+
+    private void flowSideFixed(int x, int y, int dir, int maxSide, int sleep, int minDiff) {
+        int nx = x + dir;
+        int nc = chunkOf(nx, y), ncell = cellOf(nx, y);
+        if ((flagsIn(nc, ncell) & HOLDS) == 0) return;
+
+        char[] wc = waterQ[chunkOf(x, y)], nw = waterQ[nc];
+        int cell = cellOf(x, y);
+        int a = wc[cell];
+        int b = nw[ncell];
+        if (a == 0) return;
+
+        int diff = a - b;
+        if (diff <= minDiff) return;
+
+        // half the difference, rounded down, never overfills the neighbour
+        int move = Math.min(Math.min(diff >> 1, maxSide), a);
+
+        wc[cell] = (char) (a - move);
+        nw[ncell] = (char) (b + move);
+
+        changed.set(x, y);
+        changed.set(nx, y);
+        if (move > sleep) {
+            nextActive.setWithNeighbours(x, y);
+            nextActive.setWithNeighbours(nx, y);
+        }
+    }
+
+    private void drainOutside(float dt) {
+        if (fixed) {
+            drainOutsideFixed(toUnits(leakDrainRate * dt));
+            return;
+        }
+        float maxDrain = leakDrainRate * dt;
+
+        for (int k = 0; k < leakCount; k++) {
+            int x = leakCells[k] % mapW, y = leakCells[k] / mapW;
+            float[] wc = water[chunkOf(x, y)];
+            int cell = cellOf(x, y);
+
+            float w = wc[cell];
+            if (w <= 0f) continue;
+
+            wc[cell] -= Math.min(w, maxDrain);
+            changed.set(x, y);
+            active.setWithNeighbours(x, y);
+        }
+    }
+
+    private void drainOutsideFixed(int maxDrain) {
+        for (int k = 0; k < leakCount; k++) {
+            int x = leakCells[k] % mapW, y = leakCells[k] / mapW;
+            char[] wc = waterQ[chunkOf(x, y)];
+            int cell = cellOf(x, y);
+
+            int w = wc[cell];
+            if (w == 0) continue;
+
+            int drain = Math.min(w, maxDrain);
+            wc[cell] = (char) (w - drain);
+            removedUnits += drain;
+            changed.set(x, y);
+            active.setWithNeighbours(x, y);
+        }
     }
 
     // -------------------------
     // Masks
     // -------------------------
     private void computeOutsideMask() {
-        outside = new boolean[mapH][mapW];
-        ArrayDeque<int[]> q = new ArrayDeque<>();
+        outsideMask.clearAll();
 
         // seed open border tiles
-        for (int x = 0; x < mapW; x++) {
-            if (isOpen(x, 0)) { outside[0][x] = true; q.add(new int[]{x, 0}); }
-            if (isOpen(x, mapH - 1)) { outside[mapH - 1][x] = true; q.add(new int[]{x, mapH - 1}); }
-        }
+        outsideMask.copyRow(openMask, 0, 0);
+        outsideMask.copyRow(openMask, mapH - 1, mapH - 1);
         for (int y = 0; y < mapH; y++) {
-            if (isOpen(0, y)) { outside[y][0] = true; q.add(new int[]{0, y}); }
-            if (isOpen(mapW - 1, y)) { outside[y][mapW - 1] = true; q.add(new int[]{mapW - 1, y}); }
+            if (openMask.get(0, y)) outsideMask.set(0, y);
+            if (openMask.get(mapW - 1, y)) outsideMask.set(mapW - 1, y);
         }
 
-        int[] dx = {1, -1, 0, 0};
-        int[] dy = {0, 0, 1, -1};
+        outsideMask.floodFill(openMask);
+    }
+
+    private boolean hasNeighbourFlag(int x, int y, byte flag) {
+        return (x > 0 && (flagsAt(x - 1, y) & flag) != 0) ||
+                (x < mapW - 1 && (flagsAt(x + 1, y) & flag) != 0) ||
+                (y > 0 && (flagsAt(x, y - 1) & flag) != 0) ||
+                (y < mapH - 1 && (flagsAt(x, y + 1) & flag) != 0);
+    }
 
-        while (!q.isEmpty()) {
-            int[] cur = q.removeFirst();
-            int cx = cur[0], cy = cur[1];
+    private int pushFlood(int qn, int i) {
+        if (qn == floodQueue.length) floodQueue = Arrays.copyOf(floodQueue, qn * 2);
+        floodQueue[qn] = i;
+        return qn + 1;
+    }
 
-            for (int i = 0; i < 4; i++) {
-                int nx = cx + dx[i];
-                int ny = cy + dy[i];
+    /**
+     * Flood fill from the first qn entries of floodQueue (already marked), setting mark on
+     * every open tile reached. Returns false as soon as it reaches a tile carrying conflict,
+     * i.e. two regions that must stay apart just merged.
+     */
+    private boolean floodIncremental(int qn, byte mark, byte conflict) {
+        int head = 0;
+        while (head < qn) {
+            int i = floodQueue[head++];
+            int x = i % mapW, y = i / mapW;
+
+            for (int d = 0; d < 4; d++) {
+                int nx = x, ny = y;
+                if (d == 0) nx++; else if (d == 1) nx--; else if (d == 2) ny++; else ny--;
                 if (nx < 0 || nx >= mapW || ny < 0 || ny >= mapH) continue;
-                if (!isOpen(nx, ny)) continue;
-                if (outside[ny][nx]) continue;
 
-                outside[ny][nx] = true;
-                q.addLast(new int[]{nx, ny});
+                byte f = flagsAt(nx, ny);
+                if ((f & SOLID) != 0 || (f & mark) == mark) continue;
+                if ((f & conflict) != 0) return false;
+
+                orFlags(nx, ny, mark);
+                qn = pushFlood(qn, ny * mapW + nx);
             }
         }
+        return true;
     }
 
     private void computeReachableFromInlet() {
-        reachable = new boolean[mapH][mapW];
-
         // nudge inlet inward if invalid
-        if (isSolid(inletTx, inletTy) || outside[inletTy][inletTx]) {
+        if (!openMask.get(inletTx, inletTy) || outsideMask.get(inletTx, inletTy)) {
             int[] n = findNearestInterior(inletTx, inletTy);
             inletTx = n[0];
             inletTy = n[1];
-            inletPxFixed.set(level.tileCenterPx(inletTx, inletTy));
+            inletPxFixed.set(grid.tileCenterPx(inletTx, inletTy));
         }
 
-        ArrayDeque<int[]> q = new ArrayDeque<>();
-        reachable[inletTy][inletTx] = true;
-        q.add(new int[]{inletTx, inletTy});
-
-        int[] dx = {1, -1, 0, 0};
-        int[] dy = {0, 0, 1, -1};
-
-        while (!q.isEmpty()) {
-            int[] cur = q.removeFirst();
-            int cx = cur[0], cy = cur[1];
-
-            for (int i = 0; i < 4; i++) {
-                int nx = cx + dx[i];
-                int ny = cy + dy[i];
-
-                if (nx < 0 || nx >= mapW || ny < 0 || ny >= mapH) continue;
-                if (reachable[ny][nx]) continue;
-                if (isSolid(nx, ny)) continue;
-
-                reachable[ny][nx] = true;
-                q.addLast(new int[]{nx, ny});
-            }
-        }
+        reachableMask.clearAll();
+        reachableMask.set(inletTx, inletTy);
+        reachableMask.floodFill(openMask);
     }
 
+    /**
+     * Closest open, non-outside tile by growing square rings around (sx, sy).
+     * Only each ring's perimeter is tested, in the same row-major order as the old full-square scan.
+     */
     private int[] findNearestInterior(int sx, int sy) {
         for (int r = 1; r < Math.max(mapW, mapH); r++) {
-            for (int y = sy - r; y <= sy + r; y++) {
-                for (int x = sx - r; x <= sx + r; x++) {
-                    if (x < 0 || x >= mapW || y < 0 || y >= mapH) continue;
-                    if (!isSolid(x, y) && !outside[y][x]) {
+            int y0 = Math.max(0, sy - r), y1 = Math.min(mapH - 1, sy + r);
+            for (int y = y0; y <= y1; y++) {
+                boolean edgeRow = y == sy - r || y == sy + r;
+                int step = edgeRow ? 1 : 2 * r;
+                for (int x = sx - r; x <= sx + r; x += step) {
+                    if (x < 0 || x >= mapW) continue;
+                    if (openMask.get(x, y) && !outsideMask.get(x, y)) {
                         return new int[]{x, y};
                     }
                 }
@@ -3,6 +3,8 @@ package com.boltstorms.brainflood;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
 
+import java.util.Arrays;
+
 public class DesktopLauncher {
 	public static void main (String[] arg) {
 		Lwjgl3ApplicationConfiguration config =
@@ -14,6 +16,13 @@ public class DesktopLauncher {
 		config.setForegroundFPS(60);
 		config.setTitle("BrainFlood");
 
-		new Lwjgl3Application(new BrainFloodGame(), config);
+		// --record: save each level's inputs to replays/ (see InputLog)
+		BrainFloodGame game = new BrainFloodGame(Arrays.asList(arg).contains("--record"));
+		try {
+			game.getProfiler().setListener(new JfrFrameEvents()); // frame events in flight recordings
+		} catch (LinkageError e) {
+			System.err.println("JFR not available, no frame events: " + e); // Java 8 before 8u262
+		}
+		new Lwjgl3Application(game, config);
 	}
 }
@@ -0,0 +1,66 @@
+package com.boltstorms.brainflood;
+
+import com.boltstorms.brainflood.profile.FrameProfiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits one JFR event per profiled frame, so a flight recording (java -XX:StartFlightRecording or
+ * jcmd JFR.start) shows the stage times next to GC pauses, JIT and allocation samples. Costs one
+ * branch per frame while no recording has the event enabled.
+ */
+class JfrFrameEvents implements FrameProfiler.FrameListener {
+
+    @Name("com.boltstorms.brainflood.Frame")
+    @Label("Frame")
+    @Category("BrainFlood")
+    @StackTrace(false)
+    static class FrameEvent extends Event {
+        @Label("Frame") @Timespan long frame;
+        @Label("Player") @Timespan long player;
+        @Label("Water") @Timespan long water;
+        @Label("Water Masks") @Timespan long masks;
+        @Label("Buoyancy") @Timespan long buoyancy;
+        @Label("Colliders") @Timespan long colliders;
+        @Label("Box2D") @Timespan long physics;
+        @Label("Tiles") @Timespan long tiles;
+        @Label("Shapes") @Timespan long shapes;
+        @Label("Water Draw") @Timespan long waterDraw;
+        @Label("Text") @Timespan long text;
+        @Label("Cells Stepped") long cellsStepped;
+        @Label("Water Quads") long waterQuads;
+        @Label("Bodies") long bodies;
+        @Label("Mask Rebuilds") long maskRebuilds;
+    }
+
+    private final EventType type = EventType.getEventType(FrameEvent.class);
+
+    @Override
+    public void onFrame(FrameProfiler p) {
+        if (!type.isEnabled()) return;
+
+        FrameEvent e = new FrameEvent();
+        e.frame = p.getLast(FrameProfiler.Stage.FRAME);
+        e.player = p.getLast(FrameProfiler.Stage.PLAYER);
+        e.water = p.getLast(FrameProfiler.Stage.WATER);
+        e.masks = p.getLast(FrameProfiler.Stage.MASKS);
+        e.buoyancy = p.getLast(FrameProfiler.Stage.BUOYANCY);
+        e.colliders = p.getLast(FrameProfiler.Stage.COLLIDERS);
+        e.physics = p.getLast(FrameProfiler.Stage.PHYSICS);
+        e.tiles = p.getLast(FrameProfiler.Stage.TILES);
+        e.shapes = p.getLast(FrameProfiler.Stage.SHAPES);
+        e.waterDraw = p.getLast(FrameProfiler.Stage.WATER_DRAW);
+        e.text = p.getLast(FrameProfiler.Stage.TEXT);
+        e.cellsStepped = p.getLast(FrameProfiler.Counter.CELLS_STEPPED);
+        e.waterQuads = p.getLast(FrameProfiler.Counter.WATER_QUADS);
+        e.bodies = p.getLast(FrameProfiler.Counter.BODIES);
+        e.maskRebuilds = p.getLast(FrameProfiler.Counter.MASK_REBUILDS);
+        e.commit();
+    }
+}
@@ -0,0 +1,53 @@
+package com.boltstorms.brainflood.tools;
+
+import com.boltstorms.brainflood.vocab.VocabDictionaryWriter;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compiles tab-separated vocab lists into the binary dictionary the game maps at runtime.
+ *
+ * Usage: DictionaryCompiler out.bfdict in.tsv [in2.tsv ...]
+ * Each line: hanzi TAB english TAB comma-separated tags. Blank lines and lines starting with # are skipped.
+ */
+public class DictionaryCompiler {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: DictionaryCompiler out.bfdict in.tsv [in2.tsv ...]");
+            System.exit(2);
+        }
+
+        VocabDictionaryWriter writer = new VocabDictionaryWriter();
+        for (int i = 1; i < args.length; i++) read(args[i], writer);
+
+        try (OutputStream out = new FileOutputStream(args[0])) {
+            writer.write(out);
+        }
+        System.out.println("Wrote " + writer.size() + " entries to " + args[0]);
+    }
+
+    private static void read(String path, VocabDictionaryWriter writer) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.startsWith("\uFEFF")) line = line.substring(1);
+                if (line.trim().isEmpty() || line.startsWith("#")) continue;
+
+                String[] cols = line.split("\t");
+                if (cols.length < 2) throw new IOException(path + ":" + lineNo + ": expected hanzi<TAB>english[<TAB>tags]");
+
+                String[] tags = cols.length > 2 && !cols[2].trim().isEmpty() ? cols[2].trim().split("\\s*,\\s*") : new String[0];
+                writer.add(cols[0].trim(), cols[1].trim(), tags);
+            }
+        }
+    }
+}
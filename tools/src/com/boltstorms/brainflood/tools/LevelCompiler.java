@@ -0,0 +1,39 @@
+package com.boltstorms.brainflood.tools;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.boltstorms.brainflood.level.TmxCompiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Compiles Tiled .tmx levels into the binary format read by CompiledLevel (see TmxCompiler for
+ * what is supported); the game loads the same conversion from memory for levels left uncompiled.
+ *
+ * Usage: LevelCompiler level_01.tmx [level_02.tmx ...]   (writes level_01.bflevel next to each input)
+ */
+public class LevelCompiler {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: LevelCompiler level.tmx [level2.tmx ...]");
+            System.exit(2);
+        }
+        for (String arg : args) {
+            File tmx = new File(arg);
+            String name = tmx.getName();
+            int dot = name.lastIndexOf('.');
+            File out = new File(tmx.getParentFile(), (dot < 0 ? name : name.substring(0, dot)) + ".bflevel");
+            compile(tmx, out);
+        }
+    }
+
+    public static void compile(File tmx, File out) throws IOException {
+        byte[] bytes = TmxCompiler.compile(new FileHandle(tmx));
+        try (FileOutputStream fos = new FileOutputStream(out)) {
+            fos.write(bytes);
+        }
+        System.out.println("Compiled " + tmx + " -> " + out + " (" + bytes.length + " bytes)");
+    }
+}
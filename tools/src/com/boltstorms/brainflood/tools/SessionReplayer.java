@@ -0,0 +1,194 @@
+package com.boltstorms.brainflood.tools;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.files.FileHandle;
+import com.boltstorms.brainflood.profile.FrameProfiler;
+import com.boltstorms.brainflood.session.InputLog;
+import com.boltstorms.brainflood.session.LevelSession;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays sessions recorded with the desktop launcher's --record flag (see InputLog) on a headless
+ * backend, as fast as the simulation runs, and reports what every fixed step cost. A kept recording
+ * works as a perf regression fixture: the same log floods the level the same way every time, and a
+ * replay that ends with different water than the recording is reported as diverged (exit code 1).
+ *
+ * Usage: SessionReplayer [--warmup n] [--csv] session.bfrec [more.bfrec ...]
+ * Level paths in the logs resolve against the working directory (./gradlew :tools:replay runs in assets/).
+ * --warmup replays each log n times before the measured run, so the hot paths are JIT-compiled.
+ * --csv writes step, ms and the inputs applied before that step to <log>.csv next to each log.
+ * The measured run also times each sim stage (FrameProfiler), printed as p50 / p95 / p99 / max per step.
+ */
+public class SessionReplayer {
+
+    private static final int SLOWEST_SHOWN = 5;
+    private static final FrameProfiler.Stage[] SIM_STAGES = {
+            FrameProfiler.Stage.PLAYER, FrameProfiler.Stage.WATER, FrameProfiler.Stage.MASKS,
+            FrameProfiler.Stage.BUOYANCY, FrameProfiler.Stage.COLLIDERS, FrameProfiler.Stage.PHYSICS};
+
+    public static void main(String[] args) throws IOException {
+        int warmup = 0;
+        boolean csv = false;
+        List<File> logs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--warmup") && i + 1 < args.length) warmup = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--csv")) csv = true;
+            else logs.add(new File(args[i]));
+        }
+        if (logs.isEmpty()) {
+            System.err.println("usage: SessionReplayer [--warmup n] [--csv] session.bfrec [more.bfrec ...]");
+            System.exit(2);
+        }
+
+        // no render loop and no GL (Gdx.gl stays null): the backend only provides files, logging and
+        // the natives; sessions are loaded without textures
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.updatesPerSecond = -1;
+        new HeadlessApplication(new ApplicationAdapter() {}, config);
+
+        boolean diverged = false;
+        for (File log : logs) diverged |= !replay(log, warmup, csv);
+
+        Gdx.app.exit();
+        System.exit(diverged ? 1 : 0);
+    }
+
+    /** Replays one log and prints its report. Returns false if the replay diverged from the recording. */
+    private static boolean replay(File file, int warmup, boolean csv) throws IOException {
+        InputLog log = InputLog.read(new FileHandle(file));
+        for (int i = 0; i < warmup; i++) run(log, null, null, FrameProfiler.DISABLED);
+
+        long[] stepNanos = new long[log.getSteps()];
+        int[] inputs = new int[log.getSteps()];
+        FrameProfiler profiler = new FrameProfiler(log.getSteps()); // one frame per step, the whole run
+        long waterUnits = run(log, stepNanos, inputs, profiler);
+
+        System.out.println(file.getName() + "  " + log.getMapPath() + "  seed " + log.getSeed()
+                + "  " + log.getSteps() + " steps  " + log.getEventCount() + " inputs"
+                + (log.isParallelWater() ? "  parallel water" : ""));
+        if (stepNanos.length > 0) {
+            printCosts(stepNanos);
+            printStages(profiler);
+        }
+
+        boolean same = waterUnits == log.getWaterUnits();
+        System.out.println(same
+                ? "  water: OK (" + waterUnits + " units)"
+                : "  water: DIVERGED, recorded " + log.getWaterUnits() + " units, replayed " + waterUnits);
+
+        if (csv) writeCsv(new File(file.getPath() + ".csv"), stepNanos, inputs);
+        return same;
+    }
+
+    /**
+     * Loads the log's level with its seed and runs every step, applying each input before the step it
+     * was recorded at. stepNanos and inputs (both optional) get each step's cost and input count,
+     * profiler gets one frame per step. Returns the water left at the end.
+     */
+    private static long run(InputLog log, long[] stepNanos, int[] inputs, FrameProfiler profiler) {
+        LevelSession session = LevelSession.loadHeadless(log.getMapPath(), log.getSeed());
+        try {
+            session.setProfiler(profiler);
+            session.reportCounters(); // level load rebuilt the masks: not part of step 0
+            // parallel results only depend on the band layout, not on the thread count
+            session.getWaterSystem().setSolverThreads(log.isParallelWater()
+                    ? Math.max(2, Runtime.getRuntime().availableProcessors()) : 1);
+
+            int k = 0, events = log.getEventCount();
+            for (int step = 0; step < log.getSteps(); step++) {
+                int first = k;
+                while (k < events && log.getEventStep(k) <= step) log.apply(k++, session);
+                if (inputs != null) inputs[step] = k - first;
+
+                long t0 = System.nanoTime();
+                session.step(LevelSession.STEP);
+                if (stepNanos != null) stepNanos[step] = System.nanoTime() - t0;
+                session.reportCounters();
+                profiler.endFrame();
+            }
+            while (k < events) log.apply(k++, session); // clicks after the last step
+            return session.getWaterSystem().getTotalWaterUnits();
+        } finally {
+            session.dispose();
+        }
+    }
+
+    private static void printCosts(long[] stepNanos) {
+        long total = 0;
+        for (long t : stepNanos) total += t;
+        long[] sorted = stepNanos.clone();
+        Arrays.sort(sorted);
+
+        System.out.printf("  step ms: mean %.3f  p50 %.3f  p95 %.3f  p99 %.3f  max %.3f%n",
+                ms(total) / stepNanos.length, ms(percentile(sorted, 0.50)), ms(percentile(sorted, 0.95)),
+                ms(percentile(sorted, 0.99)), ms(sorted[sorted.length - 1]));
+        System.out.printf("  total %.1f ms, %.0f steps/s (%.1fx real time)%n",
+                ms(total), stepNanos.length / (ms(total) / 1000.0),
+                stepNanos.length * LevelSession.STEP / (ms(total) / 1000.0));
+
+        // slowest steps, to line up with the inputs around them in the csv
+        StringBuilder slowest = new StringBuilder("  slowest:");
+        boolean[] shown = new boolean[stepNanos.length];
+        for (int n = 0; n < Math.min(SLOWEST_SHOWN, stepNanos.length); n++) {
+            int worst = -1;
+            for (int i = 0; i < stepNanos.length; i++) {
+                if (!shown[i] && (worst < 0 || stepNanos[i] > stepNanos[worst])) worst = i;
+            }
+            shown[worst] = true;
+            slowest.append(String.format(" step %d (%.2f ms)", worst, ms(stepNanos[worst])));
+        }
+        System.out.println(slowest);
+    }
+
+    private static void printStages(FrameProfiler profiler) {
+        profiler.summarize();
+        StringBuilder line = new StringBuilder("  stage ms p50/p95/p99/max:");
+        for (FrameProfiler.Stage s : SIM_STAGES) {
+            line.append("\n    ").append(s.label);
+            for (int pad = s.label.length(); pad < 10; pad++) line.append(' ');
+            for (int stat = FrameProfiler.P50; stat <= FrameProfiler.MAX; stat++) {
+                line.append(stat == FrameProfiler.P50 ? ' ' : '/');
+                FrameProfiler.appendMs(line, profiler.getStat(s, stat), 3);
+            }
+        }
+        FrameProfiler.Counter cells = FrameProfiler.Counter.CELLS_STEPPED;
+        line.append("\n  ").append(cells.label).append(" per step: p50 ").append(profiler.getStat(cells, FrameProfiler.P50))
+                .append("  p95 ").append(profiler.getStat(cells, FrameProfiler.P95))
+                .append("  max ").append(profiler.getStat(cells, FrameProfiler.MAX));
+        line.append("\n  ").append(FrameProfiler.Counter.MASK_REBUILDS.label).append(' ')
+                .append(profiler.getTotal(FrameProfiler.Counter.MASK_REBUILDS));
+        line.append("  max ").append(FrameProfiler.Counter.WATER_QUADS.label).append(' ')
+                .append(profiler.getStat(FrameProfiler.Counter.WATER_QUADS, FrameProfiler.MAX));
+        line.append("  max ").append(FrameProfiler.Counter.BODIES.label).append(' ')
+                .append(profiler.getStat(FrameProfiler.Counter.BODIES, FrameProfiler.MAX));
+        System.out.println(line);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static void writeCsv(File out, long[] stepNanos, int[] inputs) throws IOException {
+        try (PrintWriter w = new PrintWriter(out, "UTF-8")) {
+            w.println("step,ms,inputs");
+            for (int i = 0; i < stepNanos.length; i++) {
+                w.printf(Locale.ROOT, "%d,%.4f,%d%n", i, ms(stepNanos[i]), inputs[i]);
+            }
+        }
+        System.out.println("  wrote " + out.getPath());
+    }
+}
@@ -0,0 +1,132 @@
+package com.boltstorms.brainflood.tools;
+
+import com.boltstorms.brainflood.level.ArrayTileGrid;
+import com.boltstorms.brainflood.water.WaterSystem;
+
+/**
+ * Headless check of FIXED16 water bookkeeping on an ArrayTileGrid (no backend, no files): floods a
+ * map of shelves and basins for a few hundred steps while a shelf and the outer wall around a dry
+ * pocket are opened (incremental mask growth), a wet tile is walled in (full rebuild, purge) and
+ * finally the flooded area is opened to the outside (fallback rebuild, everything purged). Fails unless
+ *   - after every step the stored water equals added - removed, to the unit, and
+ *   - a second run from scratch gives the same total after every step,
+ * for the sequential sweep and the parallel band solver. Exit code 1 on failure.
+ *
+ * Usage: WaterConservationCheck [steps]   (./gradlew :tools:checkWater)
+ */
+public class WaterConservationCheck {
+
+    private static final int W = 96, H = 64, TILE = 32;
+    private static final float STEP = 1f / 60f;
+
+    public static void main(String[] args) {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+
+        boolean ok = true;
+        for (int threads : new int[]{1, 4}) {
+            long[] first = run(steps, threads);
+            long[] second = run(steps, threads);
+            ok &= first != null && second != null;
+            if (first == null || second == null) continue;
+
+            int diverged = -1;
+            for (int i = 0; i < steps && diverged < 0; i++) if (first[i] != second[i]) diverged = i;
+            if (diverged >= 0) {
+                System.out.println("FAIL threads " + threads + ": runs differ at step " + diverged
+                        + " (" + first[diverged] + " vs " + second[diverged] + " units)");
+                ok = false;
+            } else {
+                System.out.println("ok   threads " + threads + ": " + steps + " steps, peak "
+                        + max(first) + " units, both runs identical");
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static long max(long[] values) {
+        long m = 0;
+        for (long v : values) m = Math.max(m, v);
+        return m;
+    }
+
+    /** One run; the total after every step, or null (after printing why) if the books did not balance. */
+    private static long[] run(int steps, int threads) {
+        ArrayTileGrid grid = buildMap();
+        int inletTx = W / 2, inletTy = H - 2;
+        WaterSystem water = new WaterSystem(grid, inletTx, inletTy, W - 3, 1, grid::isWall,
+                WaterSystem.Storage.FIXED16);
+        water.sourceTilesPerSec = 30f;
+        water.setSolverThreads(threads);
+
+        long[] totals = new long[steps];
+        try {
+            for (int step = 0; step < steps; step++) {
+                if (step == steps / 4) openHole(grid, water, W / 2 - 10, 42, 3);  // shelf: incremental growth
+                if (step == steps / 2) closeWetTile(grid, water);                 // purge
+                if (step == steps * 3 / 4) openHole(grid, water, 0, 58, 1);       // outer wall into the dry pocket
+                if (step == steps * 7 / 8) openHole(grid, water, W - 1, 10, 1);   // outer wall into the flood
+
+                water.update(STEP);
+                long total = water.getTotalWaterUnits();
+                long expected = water.getAddedUnits() - water.getRemovedUnits();
+                if (total != expected) {
+                    System.out.println("FAIL threads " + threads + " step " + step + ": " + total
+                            + " units stored, added - removed = " + expected);
+                    return null;
+                }
+                totals[step] = total;
+            }
+            if (water.getAddedUnits() == 0 || water.getRemovedUnits() == 0) {
+                System.out.println("FAIL threads " + threads + ": nothing flowed in or out, the check proves nothing");
+                return null;
+            }
+            return totals;
+        } finally {
+            water.dispose();
+        }
+    }
+
+    /** Border, two shelves with gaps at opposite ends, basins along the floor and a sealed pocket in the top-left corner. */
+    private static ArrayTileGrid buildMap() {
+        ArrayTileGrid grid = new ArrayTileGrid(W, H, TILE, TILE);
+        for (int x = 0; x < W; x++) {
+            grid.setWall(x, 0);
+            grid.setWall(x, H - 1);
+        }
+        for (int y = 0; y < H; y++) {
+            grid.setWall(0, y);
+            grid.setWall(W - 1, y);
+        }
+        for (int x = 1; x < W - 12; x++) grid.setWall(x, 42);
+        for (int x = 12; x < W - 1; x++) grid.setWall(x, 22);
+        for (int bx = 4; bx + 5 < W - 1; bx += 9) {
+            for (int y = 1; y < 6; y++) {
+                grid.setWall(bx, y);
+                grid.setWall(bx + 5, y);
+            }
+        }
+        for (int i = 1; i <= 7; i++) {
+            grid.setWall(i, 55);
+            grid.setWall(7, 55 + i);
+        }
+        return grid;
+    }
+
+    private static void openHole(ArrayTileGrid grid, WaterSystem water, int x0, int y, int width) {
+        for (int x = x0; x < x0 + width; x++) grid.removeWall(x, y);
+        water.onTilesOpened(x0, y, x0 + width - 1, y);
+    }
+
+    /** Walls in the first tile holding water above the upper shelf, so a full rebuild purges it. */
+    private static void closeWetTile(ArrayTileGrid grid, WaterSystem water) {
+        for (int y = 43; y < H - 1; y++) {
+            for (int x = 1; x < W - 1; x++) {
+                if (!grid.isWall(x, y) && water.getLocalSurfacePx(x, y) > y * TILE) {
+                    grid.setWall(x, y);
+                    water.onLevelChanged();
+                    return;
+                }
+            }
+        }
+    }
+}